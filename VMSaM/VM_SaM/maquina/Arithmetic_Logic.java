@@ -1,165 +1,148 @@
 package maquina;
 
-import java.util.Objects;
-import java.util.Stack;
-
+//operações lógicas e aritméticas: um método por instrução, chamado direto pelo laço de despacho
 public class Arithmetic_Logic {
-   
-
-   public void ariLog(String instruction, Stack<Integer> stack) {
-        String[] parts = instruction.split("\\s+");
-        String op = parts[0];
-        Integer a;
-        Integer b;
-        
-        switch (op) {
-                
-            case "ADD" -> {
-             a = stack.pop();
-             b = stack.pop();
-                stack.push(a + b);
-           }
-                
-            case "SUB" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push(b - a);
-           }
-
-                
-            case "TIMES" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push(a * b);
-           }
-                
-            case "DIV" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push(b / a);
-           }
-
-            case "MOD" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push(b % a);
-           }
-
-            case "LSHIFT" -> {
-                a = stack.pop();
-                b = Integer.valueOf(parts[1]);
-               stack.push(a << b);
-           }
-
-            case "RSHIFT" -> {
-                a = stack.pop();
-                b = Integer.valueOf(parts[1]);
-               stack.push(a >> b);
-           }    
-            
-            case "NOT" -> {
-                a = stack.pop();
-               stack.push(a == 0 ? 1:0);
-           }
-
-            case "OR" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push((a != 0 && b != 0) ? 1 : 0);
-           }
-
-            case "AND" -> {
-                b = stack.pop();
-                a = stack.pop();
-               stack.push((a != 0 && b != 0) ? 1 : 0);
-           }   
-
-            case "XOR" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push(((a == 0 && b != 0) || (a != 0 && b == 0)) ? 1 : 0);
-           } 
-               
-            case "NAND" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push((a != 0 && b != 0) ? 0 : 1);
-           }
-
-            case "BITNOT" -> {
-                a = stack.pop();
-               stack.push(~a);
-           }   
-             
-            case "BITAND" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push(a & b);
-           }
-
-            case "BITOR" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push(a | b);
-           } 
-
-            case "BITXOR" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push(a ^ b);
-           } 
-
-            case "BITNAND" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push(~(a & b));
-           }
-
-            case "GREATER" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push(b > a ? 1:0);
-           }
-
-            case "LESS" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push(b < a ? 1:0);
-           }
-
-            case "EQUAL" -> {
-                a = stack.pop();
-                b = stack.pop();
-               stack.push(Objects.equals(a, b) ? 1:0);
-           }  
-
-            case "ISNIL" -> {
-                a = stack.pop();
-               stack.push(a == 0 ? 1:0);
-           }      
-
-            case "ISPOS" -> {
-                a = stack.pop();
-               stack.push(a > 0 ? 1:0);
-           } 
-
-            case "ISNEG" -> {
-                a = stack.pop();
-               stack.push(a < 0 ? 1:0);
-           }
-
-            case "CMP" -> {
-                a = stack.pop();
-                b = stack.pop();
-               if(b < a){
-                   stack.push(-1);
-               }else if(Objects.equals(a, b)){
-                   stack.push(0);
-               }else{
-                   stack.push(1);
-               }
-           }   
+
+    public void add(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(a + b);
+    }
+
+    public void sub(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(b - a);
+    }
+
+    public void times(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(a * b);
+    }
+
+    public void div(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(b / a);
+    }
+
+    public void mod(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(b % a);
+    }
+
+    public void lshift(OperandStack stack, int bits) {
+        int a = stack.pop();
+        stack.push(a << bits);
+    }
+
+    public void rshift(OperandStack stack, int bits) {
+        int a = stack.pop();
+        stack.push(a >> bits);
+    }
+
+    public void not(OperandStack stack) {
+        int a = stack.pop();
+        stack.push(a == 0 ? 1 : 0);
+    }
+
+    public void or(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push((a != 0 && b != 0) ? 1 : 0);
+    }
+
+    public void and(OperandStack stack) {
+        int b = stack.pop();
+        int a = stack.pop();
+        stack.push((a != 0 && b != 0) ? 1 : 0);
+    }
+
+    public void xor(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(((a == 0 && b != 0) || (a != 0 && b == 0)) ? 1 : 0);
+    }
+
+    public void nand(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push((a != 0 && b != 0) ? 0 : 1);
+    }
+
+    public void bitnot(OperandStack stack) {
+        int a = stack.pop();
+        stack.push(~a);
+    }
+
+    public void bitand(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(a & b);
+    }
+
+    public void bitor(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(a | b);
+    }
+
+    public void bitxor(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(a ^ b);
+    }
+
+    public void bitnand(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(~(a & b));
+    }
+
+    public void greater(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(b > a ? 1 : 0);
+    }
+
+    public void less(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(b < a ? 1 : 0);
+    }
+
+    public void equal(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        stack.push(a == b ? 1 : 0);
+    }
+
+    public void isnil(OperandStack stack) {
+        int a = stack.pop();
+        stack.push(a == 0 ? 1 : 0);
+    }
+
+    public void ispos(OperandStack stack) {
+        int a = stack.pop();
+        stack.push(a > 0 ? 1 : 0);
+    }
+
+    public void isneg(OperandStack stack) {
+        int a = stack.pop();
+        stack.push(a < 0 ? 1 : 0);
+    }
+
+    public void cmp(OperandStack stack) {
+        int a = stack.pop();
+        int b = stack.pop();
+        if (b < a) {
+            stack.push(-1);
+        } else if (a == b) {
+            stack.push(0);
+        } else {
+            stack.push(1);
         }
-       //operações lógicas e aritméticas:
-          }
-}
\ No newline at end of file
+    }
+}
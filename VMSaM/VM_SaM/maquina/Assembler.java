@@ -0,0 +1,109 @@
+package maquina;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+//traduz o texto do programa para SamProgram uma única vez, antes da execução
+public class Assembler {
+
+    public SamProgram assemble(String[] program) {
+        ArrayList<String> errors = new ArrayList<>();
+        HashMap<String, Integer> labels = collectLabels(program, errors);
+        int[] opcodes = new int[program.length];
+        int[] operands = new int[program.length];
+        ArrayList<String> symbols = new ArrayList<>();
+        HashMap<String, Integer> symbolIndex = new HashMap<>();
+        BitSet stored = new BitSet(); //slots com pelo menos um STORE no programa
+        ArrayList<Integer> loads = new ArrayList<>(); //linhas com LOAD
+
+        for (int i = 0; i < program.length; i++) {
+            String instruction = program[i].trim();
+            //rótulos e linhas vazias ocupam a posição mas não fazem nada (NOP)
+            if (instruction.isEmpty() || instruction.endsWith(":")) {
+                opcodes[i] = Opcodes.NOP;
+                continue;
+            }
+            String[] parts = instruction.split("\\s+");
+            int op = Opcodes.lookup(parts[0]);
+            if (op < 0) {
+                errors.add("Unknown instruction at line " + (i + 1) + ": " + parts[0]);
+                continue;
+            }
+            int kind = Opcodes.operandKind(op);
+            if (kind != Opcodes.NO_OPERAND && parts.length != 2) {
+                //a linha fica como NOP; o erro segue junto com os demais
+                errors.add("Syntax error at line " + (i + 1) + ": " + parts[0] + " requires exactly one operand");
+                continue;
+            }
+            opcodes[i] = op;
+            switch (kind) {
+                case Opcodes.INT_OPERAND -> operands[i] = parseInt(parts, i, errors);
+                case Opcodes.LABEL_OPERAND -> {
+                    String label = parts[1];
+                    Integer target = labels.get(label);
+                    if (target == null) {
+                        errors.add("Label not found at line " + (i + 1) + ": " + label);
+                        target = -1;
+                    }
+                    operands[i] = target;
+                }
+                case Opcodes.VAR_OPERAND -> {
+                    String name = parts[1];
+                    Integer slot = symbolIndex.get(name);
+                    if (slot == null) {
+                        slot = symbols.size();
+                        symbols.add(name);
+                        symbolIndex.put(name, slot);
+                    }
+                    operands[i] = slot;
+                    if (op == Opcodes.STORE) {
+                        stored.set(slot);
+                    } else {
+                        loads.add(i);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        //LOAD de uma variável que nenhum STORE do programa escreve
+        for (int line : loads) {
+            if (!stored.get(operands[line])) {
+                errors.add("Variable never stored at line " + (line + 1) + ": " + symbols.get(operands[line]));
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new RuntimeException(String.join("\n", errors));
+        }
+        return new SamProgram(opcodes, operands, symbols.toArray(new String[0]), labels, program);
+    }
+
+    //tabela rótulo -> linha, montada numa única passada antes da decodificação
+    private HashMap<String, Integer> collectLabels(String[] program, ArrayList<String> errors) {
+        HashMap<String, Integer> labels = new HashMap<>();
+        for (int i = 0; i < program.length; i++) {
+            String line = program[i].trim();
+            if (!line.endsWith(":")) {
+                continue;
+            }
+            String label = line.substring(0, line.length() - 1);
+            Integer previous = labels.putIfAbsent(label, i);
+            if (previous != null) {
+                errors.add("Duplicate label at line " + (i + 1) + ": " + label
+                        + " (first defined at line " + (previous + 1) + ")");
+            }
+        }
+        return labels;
+    }
+
+    //operando inteiro; um valor inválido vira erro e a montagem continua
+    private int parseInt(String[] parts, int line, ArrayList<String> errors) {
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            errors.add("Invalid integer operand for " + parts[0] + " at line " + (line + 1) + ": " + parts[1]);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package maquina;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+//executa muitos programas SaM no mesmo processo, cada um numa virtual thread e
+//com máquina própria (pilha, heap, registradores e canais de I/O em memória).
+//No máximo parallelism programas executam ao mesmo tempo.
+public class BatchRunner {
+    public static final int DEFAULT_HEAP_SIZE = 1024;
+
+    //como a execução de um programa terminou
+    public enum ExitState {
+        STOPPED,        //executou STOP
+        END_OF_PROGRAM, //o pc passou da última linha
+        INTERRUPTED,    //interrompido por SamInterpreter.interrupt
+        ERROR,          //erro de montagem ou de execução
+        INSTRUCTION_LIMIT, //Scheduler: passou do limite de instruções do job
+        HEAP_LIMIT,     //Scheduler: MALLOC não coube na heap do job
+        DEADLINE        //Scheduler: passou do prazo do job
+    }
+
+    //programa e entrada (os valores lidos por READ, READC e READF)
+    public record Job(String name, String[] program, byte[] input) {
+        public Job(String name, String[] program) {
+            this(name, program, new byte[0]);
+        }
+    }
+
+    //exitValue é o topo da pilha ao final, ou null se a pilha estiver vazia
+    public record Result(String name, ExitState state, String output, long instructions,
+                         Integer exitValue, String error) {
+    }
+
+    private final int parallelism;
+    private final int heapSize;
+    private final int maxStackDepth;
+    private final boolean fuse;
+
+    public BatchRunner(int parallelism) {
+        this(parallelism, DEFAULT_HEAP_SIZE, OperandStack.DEFAULT_MAX_DEPTH, false);
+    }
+
+    public BatchRunner(int parallelism, int heapSize, int maxStackDepth, boolean fuse) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.heapSize = heapSize;
+        this.maxStackDepth = maxStackDepth;
+        this.fuse = fuse;
+    }
+
+    //executa todos os jobs e devolve os resultados na mesma ordem
+    public List<Result> run(List<Job> jobs) throws InterruptedException {
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<Result>> futures = new ArrayList<>(jobs.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Job job : jobs) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return run(job);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+        List<Result> results = new ArrayList<>(jobs.size());
+        for (Future<Result> future : futures) {
+            if (future.state() == Future.State.CANCELLED) {
+                throw new InterruptedException();
+            }
+            results.add(future.resultNow());
+        }
+        return results;
+    }
+
+    //executa um único job na thread atual
+    public Result run(Job job) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        IO io = IO.headless(new ChannelInput(Channels.newChannel(new ByteArrayInputStream(job.input()))),
+                new BufferedOutput(output));
+        SamInterpreter interpreter = null;
+        String error = null;
+        try {
+            interpreter = new SamInterpreter(assemble(job, fuse), heapSize, maxStackDepth);
+            interpreter.execute(io, new Arithmetic_Logic(), new RegisterManip(), new StackManip(), new Control());
+        } catch (RuntimeException | StackOverflowError e) {
+            error = errorMessage(e);
+        }
+        return result(job.name(), interpreter, output, error == null ? null : ExitState.ERROR, error);
+    }
+
+    static SamProgram assemble(Job job, boolean fuse) {
+        SamProgram program = new Assembler().assemble(job.program());
+        return fuse ? new Fuser().fuse(program) : program;
+    }
+
+    static String errorMessage(Throwable e) {
+        return e.getMessage() == null ? e.toString() : e.getMessage();
+    }
+
+    //monta o Result de uma máquina que parou; sem state, ele vem dos registradores
+    static Result result(String name, SamInterpreter interpreter, ByteArrayOutputStream output,
+                         ExitState state, String error) {
+        long instructions = 0;
+        Integer exitValue = null;
+        if (interpreter != null) {
+            instructions = interpreter.instructionCount();
+            if (!interpreter.stack().isEmpty()) {
+                exitValue = interpreter.stack().peek();
+            }
+        }
+        if (state == null) {
+            if (interpreter.registers().halted()) {
+                state = ExitState.STOPPED;
+            } else if (interpreter.isInterrupted()) {
+                state = ExitState.INTERRUPTED;
+            } else {
+                state = ExitState.END_OF_PROGRAM;
+            }
+        }
+        return new Result(name, state, output.toString(StandardCharsets.UTF_8), instructions, exitValue, error);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        //uso: BatchRunner [--parallelism=N] [--quantum=N] [--max-instructions=N]
+        //[--heap=N] [--timeout-ms=N] programa... ; a entrada de cada programa é lida
+        //de programa.in, se existir. Com --quantum ou algum limite os programas
+        //executam em fatias no Scheduler, com parallelism threads
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long quantum = 0;
+        long maxInstructions = 0;
+        int heapSize = DEFAULT_HEAP_SIZE;
+        Duration timeout = null;
+        boolean scheduled = false;
+        List<Job> jobs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--parallelism=")) {
+                parallelism = Integer.parseInt(arg.substring("--parallelism=".length()));
+                continue;
+            }
+            if (arg.startsWith("--quantum=")) {
+                quantum = Long.parseLong(arg.substring("--quantum=".length()));
+                scheduled = true;
+                continue;
+            }
+            if (arg.startsWith("--max-instructions=")) {
+                maxInstructions = Long.parseLong(arg.substring("--max-instructions=".length()));
+                scheduled = true;
+                continue;
+            }
+            if (arg.startsWith("--heap=")) {
+                heapSize = Integer.parseInt(arg.substring("--heap=".length()));
+                continue;
+            }
+            if (arg.startsWith("--timeout-ms=")) {
+                timeout = Duration.ofMillis(Long.parseLong(arg.substring("--timeout-ms=".length())));
+                scheduled = true;
+                continue;
+            }
+            Path path = Paths.get(arg);
+            Path inputPath = Paths.get(arg + ".in");
+            byte[] input = Files.exists(inputPath) ? Files.readAllBytes(inputPath) : new byte[0];
+            jobs.add(new Job(arg, Files.readAllLines(path).toArray(new String[0]), input));
+        }
+        long start = System.nanoTime();
+        List<Result> results;
+        if (scheduled) {
+            try (Scheduler scheduler = new Scheduler(parallelism, quantum > 0 ? quantum : Scheduler.DEFAULT_QUANTUM,
+                    OperandStack.DEFAULT_MAX_DEPTH, false)) {
+                results = scheduler.run(jobs, new Scheduler.Limits(maxInstructions, heapSize, timeout));
+            }
+        } else {
+            results = new BatchRunner(parallelism, heapSize, OperandStack.DEFAULT_MAX_DEPTH, false).run(jobs);
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Result result : results) {
+            System.out.println(result.name() + ": " + result.state() + ", " + result.instructions()
+                    + " instructions" + (result.error() == null ? "" : ", " + result.error()));
+            System.out.print(result.output());
+        }
+        System.out.printf("%d jobs in %.1f ms%n", results.size(), elapsed / 1e6);
+    }
+}
@@ -0,0 +1,127 @@
+package maquina;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+//saída com buffer próprio: os inteiros são formatados direto em bytes e o
+//OutputStream só é chamado quando o buffer enche ou em flush (STOP e fim da execução)
+public final class BufferedOutput implements VmOutput {
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    public static final int DEFAULT_SIZE = 8192;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+
+    public BufferedOutput(OutputStream out) {
+        this(out, DEFAULT_SIZE);
+    }
+
+    public BufferedOutput(OutputStream out, int size) {
+        this.out = out;
+        this.buffer = new byte[Math.max(size, 64)];
+    }
+
+    public static BufferedOutput stdout() {
+        return new BufferedOutput(System.out);
+    }
+
+    @Override
+    public void printInt(int value) {
+        reserve(11 + LINE_SEPARATOR.length);
+        if (value == Integer.MIN_VALUE) {
+            write("-2147483648".getBytes(StandardCharsets.US_ASCII));
+        } else {
+            if (value < 0) {
+                buffer[count++] = '-';
+                value = -value;
+            }
+            //dígitos de trás para frente a partir do fim do número
+            int end = count + digits(value);
+            int i = end;
+            do {
+                buffer[--i] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            count = end;
+        }
+        write(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void printChar(char c) {
+        reserve(3);
+        if (c < 0x80) {
+            buffer[count++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[count++] = (byte) (0xc0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isSurrogate(c)) {
+            buffer[count++] = '?';
+        } else {
+            buffer[count++] = (byte) (0xe0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buffer[count++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    @Override
+    public void printLine(String text) {
+        write(text.getBytes(StandardCharsets.UTF_8));
+        write(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int digits(int value) {
+        int n = 1;
+        while (value >= 10) {
+            value /= 10;
+            n++;
+        }
+        return n;
+    }
+
+    private void write(byte[] bytes) {
+        if (bytes.length > buffer.length) {
+            drain();
+            try {
+                out.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        reserve(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void reserve(int n) {
+        if (count + n > buffer.length) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        if (count == 0) {
+            return;
+        }
+        try {
+            out.write(buffer, 0, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count = 0;
+    }
+}
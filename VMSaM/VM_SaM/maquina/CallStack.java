@@ -0,0 +1,138 @@
+package maquina;
+
+import java.util.Arrays;
+
+//modo de chamadas: uma pilha de endereços de retorno em int[], separada da pilha
+//de operandos, e caches por linha para os desvios calculados.
+//
+//JSR e JSRIND continuam empilhando o endereço de retorno também na pilha de
+//operandos, porque o código SaM endereça o quadro em relação a ele e pode lê-lo;
+//a pilha de chamadas guarda a estrutura das chamadas ativas. Um JUMPIND cujo
+//destino é o retorno da chamada mais recente é um retorno: desempilha a chamada
+//sem testar o destino, que o próprio JSR produziu. Os demais JUMPIND, inclusive
+//os que caem no retorno de uma chamada mais funda, e todo JSRIND passam pelo
+//cache da linha, que lembra o último destino já validado. Chamadas que nunca
+//retornam por JUMPIND acumulam na pilha até o limite maxDepth.
+public final class CallStack {
+    public static final int DEFAULT_MAX_DEPTH = 1 << 16;
+
+    private final int maxDepth;
+    private int[] returns;
+    private int depth;
+    //último destino validado de cada JUMPIND/JSRIND, indexado pela linha; -1 se nenhum
+    private final int[] siteTargets;
+
+    private long calls;
+    private long returnsTaken;
+    private long cacheHits;
+    private long cacheMisses;
+    private int maxReached;
+
+    CallStack(int programLength, int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Call stack depth must be at least 1: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+        this.returns = new int[Math.min(64, maxDepth)];
+        this.siteTargets = new int[programLength];
+        Arrays.fill(siteTargets, -1);
+    }
+
+    void call(int returnAddress) {
+        if (depth == maxDepth) {
+            throw new RuntimeException("Call stack overflow: maximum depth is " + maxDepth);
+        }
+        if (depth == returns.length) {
+            returns = Arrays.copyOf(returns, (int) Math.min(Math.max((long) depth * 2, 1), maxDepth));
+        }
+        returns[depth++] = returnAddress;
+        calls++;
+        if (depth > maxReached) {
+            maxReached = depth;
+        }
+    }
+
+    //JSR no modo de chamadas
+    int jsr(OperandStack stack, int target, int pc) {
+        stack.push(pc + 1);
+        call(pc + 1);
+        return target;
+    }
+
+    //JSRIND: o destino vem da pilha e passa pelo cache da linha
+    int jsrind(OperandStack stack, int pc, int programLength) {
+        if (stack.isEmpty()) {
+            throw new RuntimeException("Stack underflow in JSRIND");
+        }
+        int target = stack.pop();
+        stack.push(pc + 1);
+        check(target, pc, programLength, "JSRIND");
+        call(pc + 1);
+        return target;
+    }
+
+    //JUMPIND: retorno da chamada mais recente ou desvio calculado com cache
+    int jumpind(OperandStack stack, int pc, int programLength) {
+        if (stack.isEmpty()) {
+            throw new RuntimeException("Stack underflow in JUMPIND");
+        }
+        return jumpind(stack.pop(), pc, programLength);
+    }
+
+    //JUMPIND com o destino já desempilhado (SamInterpreter.runCached)
+    int jumpind(int target, int pc, int programLength) {
+        if (depth > 0 && returns[depth - 1] == target) {
+            depth--;
+            returnsTaken++;
+            return target;
+        }
+        check(target, pc, programLength, "JUMPIND");
+        return target;
+    }
+
+    private void check(int target, int pc, int programLength, String instruction) {
+        if (siteTargets[pc] == target) {
+            cacheHits++;
+            return;
+        }
+        cacheMisses++;
+        if (target < 0 || target >= programLength) {
+            throw new RuntimeException("Invalid jump target in " + instruction + ": " + target);
+        }
+        siteTargets[pc] = target;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    //endereço de retorno da chamada no nível level (0 é a mais antiga)
+    public int returnAddress(int level) {
+        if (level < 0 || level >= depth) {
+            throw new IndexOutOfBoundsException("Call level out of range: " + level);
+        }
+        return returns[level];
+    }
+
+    //retornos das chamadas ativas, da mais antiga para a mais recente (para Snapshot)
+    int[] activeReturns() {
+        return Arrays.copyOf(returns, depth);
+    }
+
+    void restore(int[] activeReturns) {
+        if (activeReturns.length > maxDepth) {
+            throw new RuntimeException("Call stack overflow: maximum depth is " + maxDepth);
+        }
+        returns = Arrays.copyOf(activeReturns, (int) Math.min(Math.max((long) activeReturns.length * 2, 1), maxDepth));
+        depth = activeReturns.length;
+    }
+
+    public String stats() {
+        return String.format("calls: %d, returns: %d, max depth: %d, indirect cache hits: %d, misses: %d",
+                calls, returnsTaken, maxReached, cacheHits, cacheMisses);
+    }
+}
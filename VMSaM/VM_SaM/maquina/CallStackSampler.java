@@ -0,0 +1,146 @@
+package maquina;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//amostragem da pilha de chamadas SaM para flame graphs. Uma pilha-sombra guarda
+//o endereço de retorno empilhado por cada JSR/JSRIND; o JUMPIND que desvia para
+//esse endereço desempilha a chamada. A cada interval instruções a pilha corrente
+//recebe uma amostra. Cada pilha distinta é um nó de uma árvore de chamadas, e o
+//nó corrente é mantido a cada chamada e retorno, então amostrar custa O(1).
+public final class CallStackSampler {
+    public static final int DEFAULT_INTERVAL = 100;
+
+    //nó da árvore de chamadas: uma sequência de entradas de sub-rotina a partir da raiz
+    private static final class Frame {
+        final Frame parent;
+        final int entry;
+        final HashMap<Integer, Frame> children = new HashMap<>();
+        long samples;
+
+        Frame(Frame parent, int entry) {
+            this.parent = parent;
+            this.entry = entry;
+        }
+
+        Frame child(int entry) {
+            return children.computeIfAbsent(entry, e -> new Frame(this, e));
+        }
+    }
+
+    private final SamProgram program;
+    private final int interval;
+    private final Frame root = new Frame(null, -1);
+    private Frame current = root;
+    private int[] returnAddresses = new int[64];
+    private int depth;
+    private int countdown;
+    private long totalSamples;
+
+    CallStackSampler(SamProgram program, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Sampling interval must be at least 1: " + interval);
+        }
+        this.program = program;
+        this.interval = interval;
+        this.countdown = interval;
+    }
+
+    //chamado pelo interpretador depois de cada instrução
+    void step(int op, int pc, int next) {
+        if (op == Opcodes.JSR || op == Opcodes.JSRIND) {
+            call(next, pc + 1);
+        } else if (op == Opcodes.JUMPIND) {
+            ret(next);
+        }
+        if (--countdown == 0) {
+            countdown = interval;
+            current.samples++;
+            totalSamples++;
+        }
+    }
+
+    private void call(int entry, int returnAddress) {
+        if (depth == returnAddresses.length) {
+            returnAddresses = Arrays.copyOf(returnAddresses, depth * 2);
+        }
+        returnAddresses[depth++] = returnAddress;
+        current = current.child(entry);
+    }
+
+    //um JUMPIND só é retorno se for para o endereço de uma chamada ativa; retornos
+    //que pulam quadros (o destino está mais fundo na pilha-sombra) desempilham todos
+    private void ret(int target) {
+        for (int d = depth - 1; d >= 0; d--) {
+            if (returnAddresses[d] == target) {
+                while (depth > d) {
+                    depth--;
+                    current = current.parent;
+                }
+                return;
+            }
+        }
+    }
+
+    public long totalSamples() {
+        return totalSamples;
+    }
+
+    public int interval() {
+        return interval;
+    }
+
+    //formato "collapsed stack": uma linha por pilha com amostras, quadros separados
+    //por ';' a partir da raiz e o número de amostras no fim
+    public String collapsed() {
+        Map<Integer, String> names = new HashMap<>();
+        for (Map.Entry<String, Integer> label : program.labels.entrySet()) {
+            //rótulos na mesma linha: fica o primeiro em ordem alfabética, para saída estável
+            names.merge(label.getValue(), label.getKey(), (a, b) -> a.compareTo(b) <= 0 ? a : b);
+        }
+        List<String> lines = new ArrayList<>();
+        collect(names, lines);
+        lines.sort(null);
+        StringBuilder out = new StringBuilder();
+        for (String line : lines) {
+            out.append(line).append('\n');
+        }
+        return out.toString();
+    }
+
+    public void writeCollapsed(Path file) throws IOException {
+        Files.writeString(file, collapsed(), StandardCharsets.UTF_8);
+    }
+
+    //percorre a árvore sem recursão: programas recursivos geram árvores muito
+    //profundas. O caminho só é montado para os nós que têm amostras
+    private void collect(Map<Integer, String> names, List<String> lines) {
+        ArrayList<Frame> pending = new ArrayList<>();
+        pending.add(root);
+        ArrayList<String> path = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            Frame frame = pending.remove(pending.size() - 1);
+            pending.addAll(frame.children.values());
+            if (frame.samples == 0) {
+                continue;
+            }
+            path.clear();
+            for (Frame f = frame; f != root; f = f.parent) {
+                path.add(names.getOrDefault(f.entry, "line_" + (f.entry + 1)).replace(';', '_').replace(' ', '_'));
+            }
+            path.add("<main>");
+            StringBuilder line = new StringBuilder();
+            for (int i = path.size() - 1; i >= 0; i--) {
+                line.append(path.get(i)).append(i == 0 ? " " : ";");
+            }
+            lines.add(line.append(frame.samples).toString());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package maquina;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//entrada lida em blocos de um ReadableByteChannel (ou de um arquivo mapeado em
+//memória); READ converte os dígitos direto dos bytes, sem Scanner nem String
+public final class ChannelInput implements VmInput {
+    public static final int DEFAULT_SIZE = 8192;
+
+    private final ReadableByteChannel channel; //null quando o arquivo está todo mapeado
+    private final ByteBuffer buffer;
+    private long loaded; //bytes já colocados no buffer desde o início da entrada
+
+    public ChannelInput(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(DEFAULT_SIZE);
+        this.buffer.flip();
+    }
+
+    private ChannelInput(ByteBuffer mapped) {
+        this.channel = null;
+        this.buffer = mapped;
+        this.loaded = mapped.limit();
+    }
+
+    public static ChannelInput stdin() {
+        return new ChannelInput(Channels.newChannel(System.in));
+    }
+
+    //mapeia o arquivo inteiro em memória
+    public static ChannelInput map(Path file) throws IOException {
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ChannelInput(fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()));
+        }
+    }
+
+    @Override
+    public int readInt() {
+        int b = skipWhitespace();
+        boolean negative = false;
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            b = next();
+        }
+        if (b < '0' || b > '9') {
+            throw invalid("integer", b);
+        }
+        //acumula em negativo para aceitar Integer.MIN_VALUE
+        long value = 0;
+        while (b >= '0' && b <= '9') {
+            value = value * 10 - (b - '0');
+            if (value < Integer.MIN_VALUE) {
+                throw invalid("integer", b);
+            }
+            b = next();
+        }
+        if (b >= 0 && !isWhitespace(b)) {
+            throw invalid("integer", b);
+        }
+        if (!negative) {
+            value = -value;
+            if (value > Integer.MAX_VALUE) {
+                throw invalid("integer", b);
+            }
+        }
+        return (int) value;
+    }
+
+    @Override
+    public long position() {
+        return loaded - buffer.remaining();
+    }
+
+    @Override
+    public void skipTo(long position) {
+        long skip = position - position();
+        if (skip < 0) {
+            throw new RuntimeException("Cannot move input back to position " + position);
+        }
+        while (skip > 0) {
+            if (!buffer.hasRemaining() && !fill()) {
+                throw new RuntimeException("Unexpected end of input");
+            }
+            int step = (int) Math.min(skip, buffer.remaining());
+            buffer.position(buffer.position() + step);
+            skip -= step;
+        }
+    }
+
+    @Override
+    public char readChar() {
+        return token().charAt(0);
+    }
+
+    @Override
+    public float readFloat() {
+        String token = token();
+        try {
+            return Float.parseFloat(token);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid float input: " + token);
+        }
+    }
+
+    private String token() {
+        int b = skipWhitespace();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        while (b >= 0 && !isWhitespace(b)) {
+            bytes.write(b);
+            b = next();
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private int skipWhitespace() {
+        int b = next();
+        while (b >= 0 && isWhitespace(b)) {
+            b = next();
+        }
+        if (b < 0) {
+            throw new RuntimeException("Unexpected end of input");
+        }
+        return b;
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+    }
+
+    private RuntimeException invalid(String kind, int b) {
+        return new RuntimeException("Invalid " + kind + " input near '" + (b < 0 ? "EOF" : String.valueOf((char) b)) + "'");
+    }
+
+    //próximo byte, ou -1 no fim da entrada
+    private int next() {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    private boolean fill() {
+        if (channel == null) {
+            return false;
+        }
+        try {
+            buffer.clear();
+            int n;
+            do {
+                n = channel.read(buffer);
+            } while (n == 0);
+            buffer.flip();
+            if (n > 0) {
+                loaded += n;
+            }
+            return n > 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
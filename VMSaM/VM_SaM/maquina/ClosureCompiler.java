@@ -0,0 +1,241 @@
+package maquina;
+
+import java.util.Arrays;
+
+//motor intermediário entre o laço de despacho e o JIT: cada bloco básico do
+//programa vira, na primeira vez que é alcançado, uma sequência de nós com o
+//operando, o destino, o slot da variável, a pilha e o manipulador já ligados em
+//campos. SamInterpreter.runClosures executa os nós por chamadas diretas, sem o
+//switch por instrução e sem gerar classes, então não há espera de aquecimento.
+//Os nós chamam os mesmos manipuladores de runChecked, com os mesmos erros.
+//Os nós pertencem a uma máquina: a pilha, as globais e a heap dela ficam ligadas
+final class ClosureCompiler {
+    //instrução de linha reta
+    interface Node {
+        void exec();
+    }
+
+    //instrução que encerra o bloco; devolve o próximo pc
+    interface Exit {
+        int exec();
+    }
+
+    //bloco que começa numa linha e vai até o primeiro desvio, STOP ou o fim do programa
+    static final class Block {
+        final Node[] body;
+        final Exit exit;    //null: o bloco continua na linha end
+        final int end;
+        //linha de cada nó do corpo e, na última posição, a da saída (end - 1 sem saída)
+        final int[] lines;
+        //instruções executadas antes de cada nó e, na última posição, antes da saída
+        final int[] before;
+        //instruções do bloco inteiro (uma superinstrução conta as que substituiu)
+        final int count;
+
+        Block(Node[] body, Exit exit, int end, int[] lines, int[] before, int count) {
+            this.body = body;
+            this.exit = exit;
+            this.end = end;
+            this.lines = lines;
+            this.before = before;
+            this.count = count;
+        }
+    }
+
+    private final SamProgram program;
+    private final OperandStack stack;
+    private final int[] globals;
+    private final Registers regs;
+    private final Heap heap;
+    private final CallStack calls;
+    private final IO io;
+    private final Arithmetic_Logic al;
+    private final RegisterManip rm;
+    private final StackManip sm;
+    private final Control con;
+    //blocos já montados, indexados pela linha de entrada
+    private final Block[] blocks;
+
+    ClosureCompiler(SamInterpreter vm, IO io, Arithmetic_Logic al, RegisterManip rm, StackManip sm, Control con) {
+        this.program = vm.program;
+        this.stack = vm.stack;
+        this.globals = vm.globals;
+        this.regs = vm.registers;
+        this.heap = vm.heap;
+        this.calls = vm.calls;
+        this.io = io;
+        this.al = al;
+        this.rm = rm;
+        this.sm = sm;
+        this.con = con;
+        this.blocks = new Block[program.length()];
+    }
+
+    //os nós só servem para os mesmos manipuladores e a mesma pilha de chamadas
+    boolean boundTo(IO io, Arithmetic_Logic al, RegisterManip rm, StackManip sm, Control con, CallStack calls) {
+        return this.io == io && this.al == al && this.rm == rm && this.sm == sm && this.con == con
+                && this.calls == calls;
+    }
+
+    //bloco que começa em pc, montado na primeira chamada
+    Block block(int pc) {
+        Block block = blocks[pc];
+        if (block == null) {
+            block = compile(pc);
+            blocks[pc] = block;
+        }
+        return block;
+    }
+
+    private Block compile(int entry) {
+        int[] opcodes = program.opcodes;
+        int length = opcodes.length;
+        Node[] body = new Node[length - entry];
+        int[] lines = new int[length - entry + 1];
+        int[] before = new int[length - entry + 1];
+        int n = 0;
+        int count = 0;
+        int pc = entry;
+        Exit exit = null;
+        while (pc < length) {
+            int op = opcodes[pc];
+            lines[n] = pc;
+            before[n] = count;
+            exit = exit(op, pc);
+            if (exit != null) {
+                count += width(op);
+                pc += width(op);
+                break;
+            }
+            body[n++] = node(op, pc);
+            count += width(op);
+            pc += width(op);
+            if (op == Opcodes.STOP) {
+                break;
+            }
+        }
+        if (exit == null) {
+            lines[n] = pc - 1;
+            before[n] = count;
+        }
+        return new Block(Arrays.copyOf(body, n), exit, pc,
+                Arrays.copyOf(lines, n + 1), Arrays.copyOf(before, n + 1), count);
+    }
+
+    //posições (e instruções) que o opcode consome
+    private static int width(int op) {
+        return switch (op) {
+            case Opcodes.INCOFF -> 4;
+            case Opcodes.DUP_STOREOFF -> 2;
+            case Opcodes.PUSH_LESS_JUMPC, Opcodes.PUSH_GREATER_JUMPC, Opcodes.PUSH_EQUAL_JUMPC -> 3;
+            default -> 1;
+        };
+    }
+
+    //desvios encerram o bloco; devolve null para as instruções de linha reta
+    private Exit exit(int op, int pc) {
+        OperandStack stack = this.stack;
+        Control con = this.con;
+        CallStack calls = this.calls;
+        int length = program.length();
+        int operand = program.operands[pc];
+        return switch (op) {
+            case Opcodes.JUMP -> () -> operand;
+            case Opcodes.JUMPC -> () -> con.jumpc(stack, operand, pc);
+            case Opcodes.JUMPIND -> calls == null
+                    ? () -> con.jumpind(stack, length) : () -> calls.jumpind(stack, pc, length);
+            case Opcodes.JSR -> calls == null
+                    ? () -> con.jsr(stack, operand, pc) : () -> calls.jsr(stack, operand, pc);
+            case Opcodes.JSRIND -> calls == null
+                    ? () -> con.jsrind(stack, pc, length) : () -> calls.jsrind(stack, pc, length);
+            case Opcodes.SKIP -> () -> con.skip(stack, pc);
+            case Opcodes.PUSH_LESS_JUMPC -> {
+                int target = program.operands[pc + 2];
+                yield () -> con.pushLessJumpc(stack, operand, target, pc + 3);
+            }
+            case Opcodes.PUSH_GREATER_JUMPC -> {
+                int target = program.operands[pc + 2];
+                yield () -> con.pushGreaterJumpc(stack, operand, target, pc + 3);
+            }
+            case Opcodes.PUSH_EQUAL_JUMPC -> {
+                int target = program.operands[pc + 2];
+                yield () -> con.pushEqualJumpc(stack, operand, target, pc + 3);
+            }
+            default -> null;
+        };
+    }
+
+    private Node node(int op, int pc) {
+        OperandStack stack = this.stack;
+        int[] globals = this.globals;
+        Registers regs = this.regs;
+        Heap heap = this.heap;
+        IO io = this.io;
+        Arithmetic_Logic al = this.al;
+        RegisterManip rm = this.rm;
+        StackManip sm = this.sm;
+        int operand = program.operands[pc];
+        return switch (op) {
+            case Opcodes.NOP -> () -> { };
+            case Opcodes.PUSH -> () -> sm.push(stack, operand);
+            case Opcodes.POP -> () -> sm.pop(stack);
+            case Opcodes.STORE -> () -> sm.store(stack, globals, operand);
+            case Opcodes.LOAD -> () -> sm.load(stack, globals, operand);
+            case Opcodes.DUP -> () -> sm.dup(stack);
+            case Opcodes.SWAP -> () -> sm.swap(stack);
+            case Opcodes.MALLOC -> () -> sm.malloc(stack, heap);
+            case Opcodes.FREE -> () -> sm.free(stack, heap);
+            case Opcodes.PUSHIND -> () -> sm.pushind(stack);
+            case Opcodes.STOREIND -> () -> sm.storeind(stack);
+            case Opcodes.ADDSP -> () -> sm.addsp(stack, operand);
+            case Opcodes.PUSHOFF -> () -> sm.pushoff(stack, regs, operand);
+            case Opcodes.STOREOFF -> () -> sm.storeoff(stack, regs, operand);
+            case Opcodes.PUSHSP -> () -> rm.pushsp(stack);
+            case Opcodes.POPSP -> () -> rm.popsp(stack);
+            case Opcodes.PUSHFBR -> () -> rm.pushfbr(stack, regs);
+            case Opcodes.POPFBR -> () -> rm.popfbr(stack, regs);
+            case Opcodes.LINK -> () -> rm.link(stack, regs);
+            case Opcodes.STOP -> () -> rm.stop(regs);
+            case Opcodes.ADD -> () -> al.add(stack);
+            case Opcodes.SUB -> () -> al.sub(stack);
+            case Opcodes.TIMES -> () -> al.times(stack);
+            case Opcodes.DIV -> () -> al.div(stack);
+            case Opcodes.MOD -> () -> al.mod(stack);
+            case Opcodes.LSHIFT -> () -> al.lshift(stack, operand);
+            case Opcodes.RSHIFT -> () -> al.rshift(stack, operand);
+            case Opcodes.NOT -> () -> al.not(stack);
+            case Opcodes.OR -> () -> al.or(stack);
+            case Opcodes.AND -> () -> al.and(stack);
+            case Opcodes.XOR -> () -> al.xor(stack);
+            case Opcodes.NAND -> () -> al.nand(stack);
+            case Opcodes.BITNOT -> () -> al.bitnot(stack);
+            case Opcodes.BITAND -> () -> al.bitand(stack);
+            case Opcodes.BITOR -> () -> al.bitor(stack);
+            case Opcodes.BITXOR -> () -> al.bitxor(stack);
+            case Opcodes.BITNAND -> () -> al.bitnand(stack);
+            case Opcodes.GREATER -> () -> al.greater(stack);
+            case Opcodes.LESS -> () -> al.less(stack);
+            case Opcodes.EQUAL -> () -> al.equal(stack);
+            case Opcodes.ISNIL -> () -> al.isnil(stack);
+            case Opcodes.ISPOS -> () -> al.ispos(stack);
+            case Opcodes.ISNEG -> () -> al.isneg(stack);
+            case Opcodes.CMP -> () -> al.cmp(stack);
+            case Opcodes.PRINT -> () -> io.print(stack);
+            case Opcodes.READ -> () -> io.read(stack);
+            case Opcodes.READC -> () -> io.readc(stack);
+            case Opcodes.READF -> () -> io.readf(stack);
+            case Opcodes.PRINTLN -> () -> io.println(stack);
+            case Opcodes.PRINTC -> () -> io.printc(stack);
+            case Opcodes.DUMP -> () -> io.dump(stack);
+            case Opcodes.INCOFF -> {
+                int k = program.operands[pc + 1];
+                yield () -> sm.incoff(stack, regs, operand, k);
+            }
+            case Opcodes.DUP_STOREOFF -> () -> sm.dupStoreoff(stack, regs, operand);
+            //o erro só aparece se a linha for executada, como em runChecked
+            default -> () -> {
+                throw new IllegalStateException("Invalid opcode at line " + (pc + 1));
+            };
+        };
+    }
+}
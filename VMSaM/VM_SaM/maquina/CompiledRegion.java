@@ -0,0 +1,7 @@
+package maquina;
+
+//região do programa compilada para bytecode JVM pelo JitCompiler;
+//executa a partir do ponto de entrada e devolve o pc em que o interpretador continua
+public interface CompiledRegion {
+    int run(SamInterpreter vm, OperandStack stack);
+}
@@ -1,69 +1,60 @@
 package maquina;
 
-import java.util.Stack;
-import java.util.concurrent.atomic.AtomicInteger;
-
+//cada método devolve o próximo pc; os destinos de JUMP, JUMPC e JSR já vêm resolvidos pelo Assembler
 public class Control{
-    private int findLabelLine(String[] program, String label){
-        for (int i = 0; i < program.length; i++){
-            if (program[i].equals(label + ":")){
-                return i;
-            }
+    public int jump(int target) {
+        return target;
+    }
+
+    public int jumpc(OperandStack stack, int target, int pc) {
+        return stack.pop() != 0 ? target : pc + 1;
+    }
+
+    public int jumpind(OperandStack stack, int programLength) {
+        if (stack.isEmpty()) {
+            throw new RuntimeException("Stack underflow in JUMPIND");
+        }
+        int a = stack.pop();
+        if (a < 0 || a >= programLength) {
+            throw new RuntimeException("Invalid jump target in JUMPIND: " + a);
         }
-        throw new RuntimeException("Label not found: " + label);
+        return a;
     }
-    public void control(String instruction, Stack<Integer> stack, String[] program, AtomicInteger pc){
-      String[] parts = instruction.split("\\s+");
-      String op = parts[0];
-      Integer a;
-      switch(op) {
-            case "JUMP" -> {
-                String label = parts[1];
-                int target = findLabelLine(program, label);
-                pc.set(target - 1); // -1 porque pc++ vai acontecer depois
-            }
 
-            case "JUMPC" -> {
-                String label = parts[1];
-                int target = findLabelLine(program, label);
-                if(stack.pop() != 0) {
-                    pc.set(target - 1);
-                }
-            }   
-                
-            case "JUMPIND" -> {
-                if (stack.isEmpty()) {
-                    throw new RuntimeException("Stack underflow in JUMPIND");
-                }
-                a = stack.pop();
-                if (a < 0 || a >= program.length) {
-                    throw new RuntimeException("Invalid jump target in JUMPIND: " + a);
-                }
-                pc.set(a - 1); // -1 porque o pc++ ocorre após a instrução
-            }
+    public int jsr(OperandStack stack, int target, int pc) {
+        stack.push(pc + 1);
+        return target;
+    }
 
-            case "JSR" -> {
-                stack.push(pc.get() + 1);
-                String label = parts[1];
-                int target = findLabelLine(program, label);
-                pc.set(target - 1);
-            }
-               
-            case "JSRIND" -> {
-                if (stack.isEmpty()){
-                    throw new RuntimeException("Stack underflow in JSRIND");
-                }int target = stack.pop();
-                stack.push(pc.get() + 1);
-                if(target < 0 || target >= program.length){
-                    throw new RuntimeException("Invalid jump target in JSRIND: " + target);
-                }pc.set(target - 1);
-            }
+    public int jsrind(OperandStack stack, int pc, int programLength) {
+        if (stack.isEmpty()) {
+            throw new RuntimeException("Stack underflow in JSRIND");
+        }
+        int target = stack.pop();
+        stack.push(pc + 1);
+        if (target < 0 || target >= programLength) {
+            throw new RuntimeException("Invalid jump target in JSRIND: " + target);
+        }
+        return target;
+    }
+
+    //PUSH k; LESS; JUMPC L
+    public int pushLessJumpc(OperandStack stack, int k, int target, int fallthrough) {
+        return stack.pop() < k ? target : fallthrough;
+    }
 
-            case "SKIP" -> {
-                a = stack.pop();
-               pc.set(pc.get() + a);
-            }   
+    //PUSH k; GREATER; JUMPC L
+    public int pushGreaterJumpc(OperandStack stack, int k, int target, int fallthrough) {
+        return stack.pop() > k ? target : fallthrough;
+    }
+
+    //PUSH k; EQUAL; JUMPC L
+    public int pushEqualJumpc(OperandStack stack, int k, int target, int fallthrough) {
+        return stack.pop() == k ? target : fallthrough;
+    }
 
-      }
+    public int skip(OperandStack stack, int pc) {
+        int a = stack.pop();
+        return pc + a + 1;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+package maquina;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//passo peephole de carga: troca sequências frequentes por superinstruções,
+//executadas com um único despacho. Só a primeira posição da sequência muda;
+//as seguintes continuam com as instruções originais, então qualquer desvio
+//para o meio da sequência (JUMPIND, SKIP) executa o código sem fusão.
+//Rótulos viram NOP e por isso interrompem qualquer sequência candidata.
+public class Fuser {
+    private final boolean showFusions;
+    private final List<String> fusions = new ArrayList<>();
+
+    public Fuser() {
+        this(false);
+    }
+
+    //showFusions: imprime em System.err cada fusão aplicada
+    public Fuser(boolean showFusions) {
+        this.showFusions = showFusions;
+    }
+
+    public SamProgram fuse(SamProgram program) {
+        fusions.clear();
+        int[] opcodes = program.opcodes.clone();
+        int[] operands = program.operands.clone();
+        int[] original = program.opcodes;
+        int[] args = program.operands;
+        int i = 0;
+        while (i < original.length) {
+            int fused = -1;
+            if (matches(original, i, Opcodes.PUSHOFF, Opcodes.PUSH, Opcodes.ADD, Opcodes.STOREOFF)
+                    && args[i] == args[i + 3]) {
+                fused = Opcodes.INCOFF;
+            } else if (matches(original, i, Opcodes.DUP, Opcodes.STOREOFF)) {
+                fused = Opcodes.DUP_STOREOFF;
+                operands[i] = args[i + 1];
+            } else if (matches(original, i, Opcodes.PUSH, Opcodes.LESS, Opcodes.JUMPC)) {
+                fused = Opcodes.PUSH_LESS_JUMPC;
+            } else if (matches(original, i, Opcodes.PUSH, Opcodes.GREATER, Opcodes.JUMPC)) {
+                fused = Opcodes.PUSH_GREATER_JUMPC;
+            } else if (matches(original, i, Opcodes.PUSH, Opcodes.EQUAL, Opcodes.JUMPC)) {
+                fused = Opcodes.PUSH_EQUAL_JUMPC;
+            }
+            if (fused < 0) {
+                i++;
+                continue;
+            }
+            opcodes[i] = fused;
+            int width = Opcodes.width(fused);
+            record(program, i, width, fused);
+            i += width;
+        }
+        return new SamProgram(opcodes, operands, program.symbols, program.labels, program.source);
+    }
+
+    //fusões aplicadas na última chamada de fuse, uma por linha
+    public List<String> fusions() {
+        return fusions;
+    }
+
+    private boolean matches(int[] opcodes, int start, int... sequence) {
+        if (start + sequence.length > opcodes.length) {
+            return false;
+        }
+        for (int k = 0; k < sequence.length; k++) {
+            if (opcodes[start + k] != sequence[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void record(SamProgram program, int start, int width, int fused) {
+        StringBuilder sb = new StringBuilder("line ").append(start + 1).append(": ");
+        for (int k = 0; k < width; k++) {
+            if (k > 0) {
+                sb.append("; ");
+            }
+            sb.append(program.line(start + k).trim());
+        }
+        sb.append(" -> ").append(Opcodes.mnemonic(fused));
+        fusions.add(sb.toString());
+        if (showFusions) {
+            System.err.println("[fusion] " + sb);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package maquina;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+
+//heap da máquina com reaproveitamento de memória. Cada bloco começa com uma
+//palavra de cabeçalho com o tamanho total do bloco (cabeçalho incluído), como o
+//MALLOC original; o endereço devolvido ao programa é o da palavra seguinte.
+//Blocos livres guardam o tamanho negado no cabeçalho e, na primeira palavra de
+//dados, o próximo bloco da sua lista de livres.
+//
+//Os blocos livres ficam em listas segregadas por classe de tamanho: uma lista
+//por tamanho exato até SMALL_LIMIT e uma por potência de dois acima disso.
+//Blocos livres vizinhos são unidos (coalescing) quando um pedido não pode ser
+//atendido pelas listas nem pelo topo; um bloco liberado encostado no topo
+//devolve sua memória direto para o topo.
+//
+//Um mapa de bits marca o cabeçalho de cada bloco alocado, para que FREE só
+//aceite endereços devolvidos por MALLOC e ainda não liberados: um endereço no
+//meio de um bloco, cuja palavra anterior pareça um cabeçalho, corromperia as
+//listas e o percurso de blocos de coalesce.
+public final class Heap {
+    //menor bloco: cabeçalho + ligação da lista de livres
+    static final int MIN_BLOCK = 2;
+    //tamanhos até aqui têm lista própria
+    static final int SMALL_LIMIT = 32;
+    private static final int NONE = -1;
+
+    private final int[] memory;
+    private int top; //próximo endereço nunca usado (o antigo heapPointer)
+    private final int[] freeLists; //primeiro bloco livre de cada classe, ou NONE
+    private final BitSet allocated; //cabeçalhos dos blocos alocados
+
+    //estatísticas
+    private long allocations;
+    private long frees;
+    private long allocatedWords;
+    private long coalesces;
+    private int liveWords;
+    private int peakTop;
+    private final long startNanos = System.nanoTime();
+
+    public Heap(int size) {
+        this.memory = new int[size];
+        this.freeLists = new int[sizeClass(Integer.MAX_VALUE) + 1];
+        Arrays.fill(freeLists, NONE);
+        this.allocated = new BitSet(size);
+    }
+
+    //reserva requestedSize palavras e devolve o endereço da primeira
+    public int malloc(int requestedSize) {
+        if (requestedSize < 0) {
+            throw new RuntimeException("Invalid size in MALLOC: " + requestedSize);
+        }
+        int size = Math.max(requestedSize + 1, MIN_BLOCK);
+        if (size <= 0) {
+            throw new HeapOverflowException();
+        }
+        int block = allocate(size);
+        if (block == NONE) {
+            coalesce();
+            block = allocate(size);
+            if (block == NONE) {
+                throw new HeapOverflowException();
+            }
+        }
+        allocated.set(block);
+        allocations++;
+        allocatedWords += memory[block];
+        liveWords += memory[block];
+        return block + 1;
+    }
+
+    //devolve à heap o bloco cujo endereço foi retornado por malloc
+    public void free(int address) {
+        int block = address - 1;
+        if (block < 0 || block >= top || !allocated.get(block)) {
+            throw new RuntimeException("Invalid address in FREE: " + address);
+        }
+        allocated.clear(block);
+        int size = memory[block];
+        frees++;
+        liveWords -= size;
+        if (block + size == top) {
+            top = block;
+        } else {
+            release(block, size);
+        }
+    }
+
+    private int allocate(int size) {
+        int block = takeFree(size);
+        if (block != NONE) {
+            split(block, size);
+            return block;
+        }
+        if (top + size > memory.length || top + size < 0) {
+            return NONE;
+        }
+        block = top;
+        top += size;
+        peakTop = Math.max(peakTop, top);
+        memory[block] = size;
+        return block;
+    }
+
+    //retira de uma lista o primeiro bloco livre com pelo menos size palavras
+    private int takeFree(int size) {
+        int first = sizeClass(size);
+        if (first <= SMALL_LIMIT) {
+            //listas de tamanho exato: qualquer bloco serve
+            for (int c = first; c <= SMALL_LIMIT; c++) {
+                int block = freeLists[c];
+                if (block != NONE) {
+                    freeLists[c] = memory[block + 1];
+                    return block;
+                }
+            }
+            first = SMALL_LIMIT + 1;
+        }
+        //classes por potência de dois: first-fit dentro da classe
+        for (int c = first; c < freeLists.length; c++) {
+            int previous = NONE;
+            for (int block = freeLists[c]; block != NONE; block = memory[block + 1]) {
+                if (-memory[block] >= size) {
+                    if (previous == NONE) {
+                        freeLists[c] = memory[block + 1];
+                    } else {
+                        memory[previous + 1] = memory[block + 1];
+                    }
+                    return block;
+                }
+                previous = block;
+            }
+        }
+        return NONE;
+    }
+
+    //marca block como alocado com size palavras e devolve a sobra às listas
+    private void split(int block, int size) {
+        int available = -memory[block];
+        int rest = available - size;
+        if (rest >= MIN_BLOCK) {
+            memory[block] = size;
+            release(block + size, rest);
+        } else {
+            memory[block] = available;
+        }
+    }
+
+    private void release(int block, int size) {
+        int c = sizeClass(size);
+        memory[block] = -size;
+        memory[block + 1] = freeLists[c];
+        freeLists[c] = block;
+    }
+
+    //percorre a heap do início ao topo unindo blocos livres vizinhos e refaz as listas
+    private void coalesce() {
+        coalesces++;
+        Arrays.fill(freeLists, NONE);
+        int block = 0;
+        int run = NONE;
+        while (block < top) {
+            int header = memory[block];
+            int size = Math.abs(header);
+            if (header < 0) {
+                if (run == NONE) {
+                    run = block;
+                }
+            } else if (run != NONE) {
+                release(run, block - run);
+                run = NONE;
+            }
+            block += size;
+        }
+        if (run != NONE) {
+            top = run;
+        }
+    }
+
+    static int sizeClass(int size) {
+        if (size <= SMALL_LIMIT) {
+            return size;
+        }
+        //33..63 -> SMALL_LIMIT + 1, 64..127 -> SMALL_LIMIT + 2, ...
+        return SMALL_LIMIT + 31 - Integer.numberOfLeadingZeros(size) - 4;
+    }
+
+    public int top() {
+        return top;
+    }
+
+    //palavras da memória já usadas alguma vez; acima disso tudo é zero
+    int peakTop() {
+        return peakTop;
+    }
+
+    //estado completo para Snapshot: memória, listas de livres e contadores
+    int[] memory() {
+        return memory;
+    }
+
+    int[] freeLists() {
+        return freeLists;
+    }
+
+    long[] counters() {
+        return new long[] {allocations, frees, allocatedWords, coalesces, liveWords, peakTop};
+    }
+
+    //a memória e as listas já foram copiadas para memory() e freeLists(); o mapa
+    //dos blocos alocados sai dos cabeçalhos positivos abaixo do topo
+    void restore(int top, long[] counters) {
+        this.top = top;
+        allocated.clear();
+        int block = 0;
+        while (block < top && memory[block] != 0) {
+            if (memory[block] > 0) {
+                allocated.set(block);
+            }
+            block += Math.abs(memory[block]);
+        }
+        this.allocations = counters[0];
+        this.frees = counters[1];
+        this.allocatedWords = counters[2];
+        this.coalesces = counters[3];
+        this.liveWords = (int) counters[4];
+        this.peakTop = (int) counters[5];
+    }
+
+    public int capacity() {
+        return memory.length;
+    }
+
+    public long allocations() {
+        return allocations;
+    }
+
+    public long frees() {
+        return frees;
+    }
+
+    public int liveWords() {
+        return liveWords;
+    }
+
+    //palavras livres abaixo do topo (nas listas ou ainda não unidas)
+    public int freeWords() {
+        return top - liveWords;
+    }
+
+    //maior bloco livre abaixo do topo, considerando a união de vizinhos livres
+    public int largestFreeBlock() {
+        int largest = 0;
+        int block = 0;
+        int run = 0;
+        while (block < top) {
+            int header = memory[block];
+            if (header < 0) {
+                run -= header;
+                largest = Math.max(largest, run);
+            } else {
+                run = 0;
+            }
+            block += Math.abs(header);
+        }
+        return largest;
+    }
+
+    //fragmentação externa: fração da memória livre fora do maior bloco livre
+    public double fragmentation() {
+        int free = freeWords();
+        return free == 0 ? 0.0 : 1.0 - (double) largestFreeBlock() / free;
+    }
+
+    //alocações por segundo desde a criação da heap
+    public double allocationRate() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds <= 0 ? 0.0 : allocations / seconds;
+    }
+
+    public String stats() {
+        return String.format(Locale.ROOT,
+                "heap: capacity=%d top=%d peak=%d live=%d free=%d largestFree=%d fragmentation=%.3f%n"
+                        + "heap: allocations=%d frees=%d allocatedWords=%d coalesces=%d rate=%.0f alloc/s",
+                memory.length, top, peakTop, liveWords, freeWords(), largestFreeBlock(), fragmentation(),
+                allocations, frees, allocatedWords, coalesces, allocationRate());
+    }
+}
@@ -0,0 +1,11 @@
+package maquina;
+
+//MALLOC que não coube na heap, nem depois de unir os blocos livres; o Scheduler
+//reconhece o tipo (também como causa de outra exceção) e encerra o job com HEAP_LIMIT
+public class HeapOverflowException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public HeapOverflowException() {
+        super("Heap overflow in MALLOC");
+    }
+}
@@ -1,48 +1,71 @@
 package maquina; 
 
-import java.util.Scanner;
-import java.util.Stack;
-
+//instruções de entrada e saída sobre um VmInput/VmOutput plugável. No modo
+//interativo (new IO()) cada leitura mostra um aviso antes; no modo headless
+//não há avisos, só os valores do programa vão para a saída
 public class IO {
-    public void inputOutput(String instruction, Stack<Integer> stack, Scanner scanner) {
-        String[] parts = instruction.split("\\s+");
-        String op = parts[0];
-
-         switch (op) {
-            case "PRINT" -> System.out.println(stack.peek());
-                
-            case "READ" -> {
-                System.out.print("Digite um número: ");
-                int input = scanner.nextInt();
-                stack.push(input);
-            }
+    private final VmInput in;
+    private final VmOutput out;
+    private final boolean prompts;
 
-            case "READC" -> {
-                System.out.print("Digite um caractere: ");
-                char c = scanner.next().charAt(0);
-                stack.push((int) c);
-            }
+    //console: entrada padrão, saída padrão com buffer e avisos de leitura
+    public IO() {
+        this(ChannelInput.stdin(), BufferedOutput.stdout(), true);
+    }
 
-            case "READF" -> {
-                System.out.print("Digite um float: ");
-                float f = scanner.nextFloat();
-                stack.push((int) f);
-            }
+    public IO(VmInput in, VmOutput out, boolean prompts) {
+        this.in = in;
+        this.out = out;
+        this.prompts = prompts;
+    }
+
+    public static IO headless(VmInput in, VmOutput out) {
+        return new IO(in, out, false);
+    }
 
+    public void print(OperandStack stack) {
+        out.printInt(stack.peek());
+    }
 
-            case "PRINTLN" -> System.out.println(stack.peek());
+    public void println(OperandStack stack) {
+        out.printInt(stack.peek());
+    }
 
-            case "PRINTC" -> System.out.print((char) stack.peek().intValue());
+    public void printc(OperandStack stack) {
+        out.printChar((char) stack.peek());
+    }
 
-            case "DUMP" -> System.out.println("Stack: " + stack);
-   
-            }
+    public void read(OperandStack stack) {
+        prompt("Digite um número: ");
+        stack.push(in.readInt());
+    }
 
-         }
+    public void readc(OperandStack stack) {
+        prompt("Digite um caractere: ");
+        stack.push((int) in.readChar());
     }
-        
-  
 
+    public void readf(OperandStack stack) {
+        prompt("Digite um float: ");
+        stack.push((int) in.readFloat());
+    }
 
+    public void dump(OperandStack stack) {
+        out.printLine("Stack: " + stack);
+    }
 
+    //esvazia o buffer de saída (STOP e fim da execução)
+    public void flush() {
+        out.flush();
+    }
 
+    //o aviso precisa aparecer antes de a leitura bloquear
+    private void prompt(String text) {
+        if (prompts) {
+            for (int i = 0; i < text.length(); i++) {
+                out.printChar(text.charAt(i));
+            }
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package maquina;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+//gerador mínimo de class files usado pelo JitCompiler: uma classe com um
+//construtor vazio e um único método de instância. Gera a versão 49 (Java 5),
+//verificada por inferência de tipos, o que dispensa a StackMapTable.
+final class JitClassWriter {
+    //opcodes JVM usados pelo compilador
+    static final int ICONST_M1 = 0x02;
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int ISTORE = 0x36;
+    static final int POP = 0x57;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IDIV = 0x6c;
+    static final int IREM = 0x70;
+    static final int ISHL = 0x78;
+    static final int ISHR = 0x7a;
+    static final int IAND = 0x7e;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int GOTO = 0xa7;
+    static final int LOOKUPSWITCH = 0xab;
+    static final int IRETURN = 0xac;
+    static final int RETURN = 0xb1;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final HashMap<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    //código do método em construção
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final ArrayList<int[]> fixups = new ArrayList<>(); //{posição do offset, posição da instrução, rótulo, largura}
+    private int[] labels = new int[16];
+    private int labelCount;
+
+    JitClassWriter() {
+        Arrays.fill(labels, -1);
+    }
+
+    // ---- constant pool ----
+
+    private int constant(String key, Writer body) {
+        Integer index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            body.write();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        int created = poolCount++;
+        poolIndex.put(key, created);
+        return created;
+    }
+
+    private interface Writer {
+        void write() throws IOException;
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, () -> {
+            poolOut.writeByte(1);
+            poolOut.writeUTF(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, () -> {
+            poolOut.writeByte(7);
+            poolOut.writeShort(name);
+        });
+    }
+
+    int integer(int value) {
+        return constant("I" + value, () -> {
+            poolOut.writeByte(3);
+            poolOut.writeInt(value);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int n = utf8(name);
+        int d = utf8(descriptor);
+        return constant("N" + name + ":" + descriptor, () -> {
+            poolOut.writeByte(12);
+            poolOut.writeShort(n);
+            poolOut.writeShort(d);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        int c = classRef(owner);
+        int nt = nameAndType(name, descriptor);
+        return constant("M" + owner + "." + name + descriptor, () -> {
+            poolOut.writeByte(10);
+            poolOut.writeShort(c);
+            poolOut.writeShort(nt);
+        });
+    }
+
+    // ---- emissão de código ----
+
+    int position() {
+        return code.size();
+    }
+
+    void op(int opcode) {
+        code.write(opcode);
+    }
+
+    void op(int opcode, int u1) {
+        code.write(opcode);
+        code.write(u1);
+    }
+
+    void u2(int value) {
+        code.write(value >>> 8);
+        code.write(value);
+    }
+
+    private void u4(int value) {
+        u2(value >>> 16);
+        u2(value & 0xffff);
+    }
+
+    void iconst(int value) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op(BIPUSH, value & 0xff);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(SIPUSH);
+            u2(value & 0xffff);
+        } else {
+            op(LDC_W);
+            u2(integer(value));
+        }
+    }
+
+    void iload(int local) {
+        op(ILOAD, local);
+    }
+
+    void istore(int local) {
+        op(ISTORE, local);
+    }
+
+    void aload(int local) {
+        op(ALOAD, local);
+    }
+
+    void invoke(int opcode, String owner, String name, String descriptor) {
+        op(opcode);
+        u2(methodRef(owner, name, descriptor));
+    }
+
+    int newLabel() {
+        int id = labelCount++;
+        if (id == labels.length) {
+            labels = Arrays.copyOf(labels, id * 2);
+            Arrays.fill(labels, id, labels.length, -1);
+        }
+        return id;
+    }
+
+    void bind(int label) {
+        labels[label] = code.size();
+    }
+
+    //desvio com offset de 16 bits (goto, if*)
+    void jump(int opcode, int label) {
+        int at = code.size();
+        op(opcode);
+        fixups.add(new int[] {code.size(), at, label, 2});
+        u2(0);
+    }
+
+    void lookupswitch(int[] keys, int[] targets, int defaultLabel) {
+        int at = code.size();
+        op(LOOKUPSWITCH);
+        while (code.size() % 4 != 0) {
+            code.write(0);
+        }
+        fixups.add(new int[] {code.size(), at, defaultLabel, 4});
+        u4(0);
+        u4(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            u4(keys[i]);
+            fixups.add(new int[] {code.size(), at, targets[i], 4});
+            u4(0);
+        }
+    }
+
+    // ---- montagem da classe ----
+
+    //gera a classe com o construtor padrão e o método já emitido
+    byte[] toClass(String internalName, String iface, String methodName, String descriptor,
+                   int maxStack, int maxLocals) {
+        byte[] body = code.toByteArray();
+        for (int[] fixup : fixups) {
+            int target = labels[fixup[2]];
+            if (target < 0) {
+                throw new IllegalStateException("Unbound label " + fixup[2]);
+            }
+            int offset = target - fixup[1];
+            if (fixup[3] == 2) {
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                    throw new IllegalStateException("Branch offset too large");
+                }
+                body[fixup[0]] = (byte) (offset >>> 8);
+                body[fixup[0] + 1] = (byte) offset;
+            } else {
+                body[fixup[0]] = (byte) (offset >>> 24);
+                body[fixup[0] + 1] = (byte) (offset >>> 16);
+                body[fixup[0] + 2] = (byte) (offset >>> 8);
+                body[fixup[0] + 3] = (byte) offset;
+            }
+        }
+
+        int thisClass = classRef(internalName);
+        int superClass = classRef("java/lang/Object");
+        int interfaceClass = classRef(iface);
+        int codeName = utf8("Code");
+        int initName = utf8("<init>");
+        int voidDescriptor = utf8("()V");
+        int objectInit = methodRef("java/lang/Object", "<init>", "()V");
+        int runName = utf8(methodName);
+        int runDescriptor = utf8(descriptor);
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            poolOut.flush();
+            pool.writeTo(out);
+            out.writeShort(0x0001 | 0x0010 | 0x0020); //public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+            out.writeShort(0); //campos
+            out.writeShort(2); //métodos
+
+            //construtor: aload_0; invokespecial Object.<init>; return
+            out.writeShort(0x0001);
+            out.writeShort(initName);
+            out.writeShort(voidDescriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + 5);
+            out.writeShort(1);
+            out.writeShort(1);
+            out.writeInt(5);
+            out.writeByte(0x2a);
+            out.writeByte(INVOKESPECIAL);
+            out.writeShort(objectInit);
+            out.writeByte(RETURN);
+            out.writeShort(0);
+            out.writeShort(0);
+
+            out.writeShort(0x0001 | 0x0010); //public final
+            out.writeShort(runName);
+            out.writeShort(runDescriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + body.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0); //tabela de exceções
+            out.writeShort(0); //atributos do Code
+
+            out.writeShort(0); //atributos da classe
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
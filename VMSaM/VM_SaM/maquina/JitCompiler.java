@@ -0,0 +1,431 @@
+package maquina;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+
+//compila uma região quente do programa SaM para uma hidden class JVM.
+//A região parte do ponto de entrada e segue os desvios diretos (JUMP, JUMPC, JSR
+//e o retorno de cada JSR); instruções de I/O e STOP encerram a região e devolvem
+//o controle ao interpretador. Dentro de um bloco básico os valores empilhados
+//ficam em locais JVM e só são gravados na OperandStack nas fronteiras do bloco
+//ou antes de instruções que dependem do tamanho real da pilha. Desvios
+//calculados (JUMPIND, JSRIND, SKIP) continuam no código compilado quando o
+//destino é um ponto de junção da região e saem para o interpretador caso contrário.
+public class JitCompiler {
+    public static final int DEFAULT_THRESHOLD = 1000;
+    //limite de posições por região, para manter o método abaixo de 32KB de bytecode
+    static final int MAX_REGION = 2000;
+    //quantos valores do topo da pilha podem ficar em locais JVM
+    private static final int MAX_VIRTUAL = 8;
+
+    private static final String VM = "maquina/SamInterpreter";
+    private static final String STACK = "maquina/OperandStack";
+    private static final String RUNTIME = "maquina/JitRuntime";
+    private static final String BINARY = "(II)I";
+    private static final String UNARY = "(I)I";
+
+    //locais do método gerado (0 é o this)
+    private static final int VM_LOCAL = 1;
+    private static final int STACK_LOCAL = 2;
+    private static final int TMP_A = 3;
+    private static final int TMP_B = 4;
+    private static final int FIRST_VIRTUAL = 5;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private JitClassWriter w;
+    private BitSet region;
+    private int depth; //quantos valores do topo estão em locais
+    private int[] labels;
+    private BitSet joins;
+    private int[] joinSlots;
+    private int[] joinLabels;
+
+    //devolve null se a região não puder ser compilada
+    public CompiledRegion compile(SamProgram program, int entry) {
+        region = new BitSet(program.length());
+        joins = new BitSet(program.length());
+        collect(program, entry);
+
+        w = new JitClassWriter();
+        depth = 0;
+        labels = new int[program.length()];
+        Arrays.fill(labels, -1);
+        joinSlots = joins.stream().filter(region::get).toArray();
+        joinLabels = new int[joinSlots.length];
+        for (int i = 0; i < joinSlots.length; i++) {
+            joinLabels[i] = label(joinSlots[i]);
+        }
+
+        w.jump(JitClassWriter.GOTO, label(entry));
+        boolean fallsThrough = false;
+        for (int s = region.nextSetBit(0); s >= 0; s = region.nextSetBit(s + 1)) {
+            if (joins.get(s)) {
+                spill();
+                w.bind(label(s));
+                interruptCheck(s);
+            }
+            fallsThrough = emit(program, s);
+            if (fallsThrough && !region.get(s + 1)) {
+                exit(s + 1);
+                fallsThrough = false;
+            }
+            if (w.position() > 30000) {
+                return null;
+            }
+        }
+
+        try {
+            byte[] bytes = w.toClass("maquina/JitRegion", "maquina/CompiledRegion", "run",
+                    "(L" + VM + ";L" + STACK + ";)I", 8, FIRST_VIRTUAL + MAX_VIRTUAL);
+            Class<?> type = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            return (CompiledRegion) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | IllegalStateException | LinkageError e) {
+            return null;
+        } finally {
+            w = null;
+            region = null;
+        }
+    }
+
+    //percorre os sucessores diretos a partir da entrada, marcando as junções
+    private void collect(SamProgram program, int entry) {
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(entry);
+        joins.set(entry);
+        int count = 0;
+        while (!work.isEmpty() && count < MAX_REGION) {
+            int s = work.pop();
+            if (s < 0 || s >= program.length() || region.get(s)) {
+                continue;
+            }
+            region.set(s);
+            count++;
+            int op = Opcodes.baseOpcode(program.opcodes[s]);
+            int target = program.operands[s];
+            switch (op) {
+                case Opcodes.JUMP -> {
+                    joins.set(target);
+                    work.push(target);
+                }
+                case Opcodes.JUMPC -> {
+                    joins.set(target);
+                    work.push(target);
+                    work.push(s + 1);
+                }
+                case Opcodes.JSR -> {
+                    joins.set(target);
+                    joins.set(s + 1);
+                    work.push(target);
+                    work.push(s + 1);
+                }
+                case Opcodes.JSRIND -> {
+                    joins.set(s + 1);
+                    work.push(s + 1);
+                }
+                case Opcodes.JUMPIND, Opcodes.SKIP -> { }
+                default -> {
+                    if (!exits(op)) {
+                        work.push(s + 1);
+                    }
+                }
+            }
+        }
+    }
+
+    //instruções que devolvem o controle ao interpretador
+    private static boolean exits(int op) {
+        return switch (op) {
+            case Opcodes.STOP, Opcodes.PRINT, Opcodes.PRINTLN, Opcodes.PRINTC, Opcodes.DUMP,
+                 Opcodes.READ, Opcodes.READC, Opcodes.READF -> true;
+            default -> false;
+        };
+    }
+
+    private int label(int slot) {
+        if (labels[slot] < 0) {
+            labels[slot] = w.newLabel();
+        }
+        return labels[slot];
+    }
+
+    //gera o código da posição s; devolve true se a execução segue para s + 1
+    private boolean emit(SamProgram program, int s) {
+        int op = Opcodes.baseOpcode(program.opcodes[s]);
+        int operand = program.operands[s];
+        if (exits(op)) {
+            exit(s);
+            return false;
+        }
+        switch (op) {
+            case Opcodes.NOP -> { }
+            case Opcodes.PUSH -> {
+                w.iconst(operand);
+                pushValue();
+            }
+            case Opcodes.POP -> {
+                if (depth > 0) {
+                    depth--;
+                } else {
+                    w.aload(STACK_LOCAL);
+                    w.invoke(JitClassWriter.INVOKEVIRTUAL, STACK, "pop", "()I");
+                    w.op(JitClassWriter.POP);
+                }
+            }
+            case Opcodes.DUP -> {
+                int a = popValue(TMP_A);
+                w.iload(a);
+                pushValue();
+                w.iload(a);
+                pushValue();
+            }
+            case Opcodes.SWAP -> {
+                int a = popValue(TMP_A);
+                if (a != TMP_A) {
+                    //o local de a será reutilizado ao reempilhar b
+                    w.iload(a);
+                    w.istore(TMP_A);
+                    a = TMP_A;
+                }
+                int b = popValue(TMP_B);
+                w.iload(b);
+                pushValue();
+                w.iload(a);
+                pushValue();
+            }
+            case Opcodes.ADD -> binary(JitClassWriter.IADD);
+            case Opcodes.SUB -> binary(JitClassWriter.ISUB);
+            case Opcodes.TIMES -> binary(JitClassWriter.IMUL);
+            case Opcodes.DIV -> binary(JitClassWriter.IDIV);
+            case Opcodes.MOD -> binary(JitClassWriter.IREM);
+            case Opcodes.BITAND -> binary(JitClassWriter.IAND);
+            case Opcodes.BITOR -> binary(JitClassWriter.IOR);
+            case Opcodes.BITXOR -> binary(JitClassWriter.IXOR);
+            case Opcodes.OR -> binaryCall("or");
+            case Opcodes.AND -> binaryCall("and");
+            case Opcodes.XOR -> binaryCall("xor");
+            case Opcodes.NAND -> binaryCall("nand");
+            case Opcodes.BITNAND -> binaryCall("bitnand");
+            case Opcodes.GREATER -> binaryCall("greater");
+            case Opcodes.LESS -> binaryCall("less");
+            case Opcodes.EQUAL -> binaryCall("equal");
+            case Opcodes.CMP -> binaryCall("cmp");
+            case Opcodes.NOT, Opcodes.ISNIL -> unaryCall("isnil");
+            case Opcodes.ISPOS -> unaryCall("ispos");
+            case Opcodes.ISNEG -> unaryCall("isneg");
+            case Opcodes.BITNOT -> {
+                w.iload(popValue(TMP_A));
+                w.op(JitClassWriter.ICONST_M1);
+                w.op(JitClassWriter.IXOR);
+                pushValue();
+            }
+            case Opcodes.LSHIFT, Opcodes.RSHIFT -> {
+                w.iload(popValue(TMP_A));
+                w.iconst(operand);
+                w.op(op == Opcodes.LSHIFT ? JitClassWriter.ISHL : JitClassWriter.ISHR);
+                pushValue();
+            }
+            case Opcodes.LOAD -> {
+                w.aload(VM_LOCAL);
+                w.iconst(operand);
+                w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, "load", "(L" + VM + ";I)I");
+                pushValue();
+            }
+            case Opcodes.STORE -> {
+                int a = popValue(TMP_A);
+                w.aload(VM_LOCAL);
+                w.iconst(operand);
+                w.iload(a);
+                w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, "store", "(L" + VM + ";II)V");
+            }
+            case Opcodes.PUSHOFF -> {
+                spill();
+                w.aload(VM_LOCAL);
+                w.iconst(operand);
+                w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, "pushoff", "(L" + VM + ";I)I");
+                pushValue();
+            }
+            case Opcodes.STOREOFF -> {
+                int a = popValue(TMP_A);
+                spill();
+                w.aload(VM_LOCAL);
+                w.iconst(operand);
+                w.iload(a);
+                w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, "storeoff", "(L" + VM + ";II)V");
+            }
+            case Opcodes.PUSHFBR -> {
+                w.aload(VM_LOCAL);
+                w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, "pushfbr", "(L" + VM + ";)I");
+                pushValue();
+            }
+            case Opcodes.POPFBR -> {
+                int a = popValue(TMP_A);
+                w.aload(VM_LOCAL);
+                w.iload(a);
+                w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, "popfbr", "(L" + VM + ";I)V");
+            }
+            case Opcodes.PUSHSP -> {
+                spill();
+                w.aload(STACK_LOCAL);
+                w.invoke(JitClassWriter.INVOKEVIRTUAL, STACK, "size", "()I");
+                pushValue();
+            }
+            case Opcodes.ADDSP -> {
+                spill();
+                w.aload(VM_LOCAL);
+                w.iconst(operand);
+                w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, "addsp", "(L" + VM + ";I)V");
+            }
+            case Opcodes.POPSP -> runtime("popsp");
+            case Opcodes.LINK -> runtime("link");
+            case Opcodes.MALLOC -> runtime("malloc");
+            case Opcodes.FREE -> runtime("free");
+            case Opcodes.PUSHIND -> runtime("pushind");
+            case Opcodes.STOREIND -> runtime("storeind");
+            case Opcodes.JUMP -> {
+                spill();
+                branch(operand);
+                return false;
+            }
+            case Opcodes.JUMPC -> {
+                int a = popValue(TMP_A);
+                spill();
+                w.iload(a);
+                if (region.get(operand)) {
+                    w.jump(JitClassWriter.IFNE, label(operand));
+                } else {
+                    int stay = w.newLabel();
+                    w.jump(JitClassWriter.IFEQ, stay);
+                    exit(operand);
+                    w.bind(stay);
+                }
+            }
+            case Opcodes.JSR -> {
+                spill();
+                w.aload(VM_LOCAL);
+                w.iconst(s + 1);
+                w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, "jsr", "(L" + VM + ";I)V");
+                branch(operand);
+                return false;
+            }
+            case Opcodes.JUMPIND, Opcodes.JSRIND, Opcodes.SKIP -> {
+                spill();
+                w.aload(VM_LOCAL);
+                w.iconst(s);
+                w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, op == Opcodes.JUMPIND ? "jumpind"
+                        : op == Opcodes.JSRIND ? "jsrind" : "skip", "(L" + VM + ";I)I");
+                dispatch();
+                return false;
+            }
+            default -> {
+                exit(s);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //desempilha um operando: do local que o guarda ou da OperandStack para tmp
+    private int popValue(int tmp) {
+        if (depth > 0) {
+            depth--;
+            return FIRST_VIRTUAL + depth;
+        }
+        w.aload(STACK_LOCAL);
+        w.invoke(JitClassWriter.INVOKEVIRTUAL, STACK, "pop", "()I");
+        w.istore(tmp);
+        return tmp;
+    }
+
+    //guarda num local o valor que está no topo da pilha JVM
+    private void pushValue() {
+        if (depth == MAX_VIRTUAL) {
+            spill();
+        }
+        w.istore(FIRST_VIRTUAL + depth);
+        depth++;
+    }
+
+    //grava na OperandStack os valores mantidos em locais, do mais antigo ao topo
+    private void spill() {
+        for (int i = 0; i < depth; i++) {
+            w.aload(STACK_LOCAL);
+            w.iload(FIRST_VIRTUAL + i);
+            w.invoke(JitClassWriter.INVOKEVIRTUAL, STACK, "push", "(I)V");
+        }
+        depth = 0;
+    }
+
+    private void binary(int jvmOp) {
+        int a = popValue(TMP_A);
+        int b = popValue(TMP_B);
+        w.iload(b);
+        w.iload(a);
+        w.op(jvmOp);
+        pushValue();
+    }
+
+    private void binaryCall(String name) {
+        int a = popValue(TMP_A);
+        int b = popValue(TMP_B);
+        w.iload(b);
+        w.iload(a);
+        w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, name, BINARY);
+        pushValue();
+    }
+
+    private void unaryCall(String name) {
+        w.iload(popValue(TMP_A));
+        w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, name, UNARY);
+        pushValue();
+    }
+
+    //instruções que dependem da pilha real: grava os locais e chama o JitRuntime
+    private void runtime(String name) {
+        spill();
+        w.aload(VM_LOCAL);
+        w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, name, "(L" + VM + ";)V");
+    }
+
+    //desvio incondicional: dentro da região ou de volta ao interpretador
+    private void branch(int target) {
+        if (region.get(target)) {
+            w.jump(JitClassWriter.GOTO, label(target));
+        } else {
+            exit(target);
+        }
+    }
+
+    //os laços compilados passam por junções: ali o código devolve o controle ao
+    //interpretador se houver um pedido de interrupção ou a fatia tiver acabado
+    private void interruptCheck(int s) {
+        int stay = w.newLabel();
+        w.aload(VM_LOCAL);
+        w.invoke(JitClassWriter.INVOKESTATIC, RUNTIME, "interrupted", "(L" + VM + ";)Z");
+        w.jump(JitClassWriter.IFEQ, stay);
+        w.iconst(s);
+        w.op(JitClassWriter.IRETURN);
+        w.bind(stay);
+    }
+
+    //volta ao interpretador na posição pc
+    private void exit(int pc) {
+        spill();
+        w.iconst(pc);
+        w.op(JitClassWriter.IRETURN);
+    }
+
+    //destino calculado no topo da pilha JVM: segue dentro da região se for uma
+    //junção compilada, senão devolve o destino ao interpretador
+    private void dispatch() {
+        w.istore(TMP_A);
+        w.iload(TMP_A);
+        int leave = w.newLabel();
+        w.lookupswitch(joinSlots, joinLabels, leave);
+        w.bind(leave);
+        w.iload(TMP_A);
+        w.op(JitClassWriter.IRETURN);
+    }
+}
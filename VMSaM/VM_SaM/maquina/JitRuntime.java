@@ -0,0 +1,151 @@
+package maquina;
+
+//rotinas chamadas pelo código gerado pelo JitCompiler. As funções puras têm a mesma
+//semântica de Arithmetic_Logic, recebendo os operandos na ordem (b, a) em que
+//b estava abaixo de a na pilha; as demais delegam para os manipuladores da máquina.
+final class JitRuntime {
+    private static final StackManip SM = new StackManip();
+    private static final RegisterManip RM = new RegisterManip();
+    private static final Control CON = new Control();
+
+    private JitRuntime() {
+    }
+
+    static int or(int b, int a) {
+        return (a != 0 && b != 0) ? 1 : 0;
+    }
+
+    static int and(int b, int a) {
+        return (a != 0 && b != 0) ? 1 : 0;
+    }
+
+    static int xor(int b, int a) {
+        return ((a == 0 && b != 0) || (a != 0 && b == 0)) ? 1 : 0;
+    }
+
+    static int nand(int b, int a) {
+        return (a != 0 && b != 0) ? 0 : 1;
+    }
+
+    static int bitnand(int b, int a) {
+        return ~(a & b);
+    }
+
+    static int greater(int b, int a) {
+        return b > a ? 1 : 0;
+    }
+
+    static int less(int b, int a) {
+        return b < a ? 1 : 0;
+    }
+
+    static int equal(int b, int a) {
+        return a == b ? 1 : 0;
+    }
+
+    static int cmp(int b, int a) {
+        if (b < a) {
+            return -1;
+        }
+        return a == b ? 0 : 1;
+    }
+
+    static int isnil(int a) {
+        return a == 0 ? 1 : 0;
+    }
+
+    static int ispos(int a) {
+        return a > 0 ? 1 : 0;
+    }
+
+    static int isneg(int a) {
+        return a < 0 ? 1 : 0;
+    }
+
+    //PUSHOFF sem empilhar: devolve o valor para o código gerado mantê-lo num local
+    static int pushoff(SamInterpreter vm, int offset) {
+        OperandStack stack = vm.stack;
+        int address = vm.registers.fp + offset;
+        stack.extendTo(address + 1);
+        return stack.get(address);
+    }
+
+    //STOREOFF com o valor já desempilhado pelo código gerado
+    static void storeoff(SamInterpreter vm, int offset, int value) {
+        OperandStack stack = vm.stack;
+        int address = vm.registers.fp + offset;
+        stack.extendTo(address + 1);
+        stack.set(address, value);
+    }
+
+    //cada passagem por uma junção gasta uma instrução da fatia de executeSlice
+    static boolean interrupted(SamInterpreter vm) {
+        return vm.isInterrupted() || --vm.sliceBudget <= 0;
+    }
+
+    static int load(SamInterpreter vm, int slot) {
+        return vm.globals[slot];
+    }
+
+    static void store(SamInterpreter vm, int slot, int value) {
+        vm.globals[slot] = value;
+    }
+
+    static int pushfbr(SamInterpreter vm) {
+        return vm.registers.fp;
+    }
+
+    static void popfbr(SamInterpreter vm, int value) {
+        vm.registers.fp = value;
+    }
+
+    static void link(SamInterpreter vm) {
+        RM.link(vm.stack, vm.registers);
+    }
+
+    static void popsp(SamInterpreter vm) {
+        RM.popsp(vm.stack);
+    }
+
+    static void addsp(SamInterpreter vm, int n) {
+        SM.addsp(vm.stack, n);
+    }
+
+    static void malloc(SamInterpreter vm) {
+        SM.malloc(vm.stack, vm.heap);
+    }
+
+    static void free(SamInterpreter vm) {
+        SM.free(vm.stack, vm.heap);
+    }
+
+    static void pushind(SamInterpreter vm) {
+        SM.pushind(vm.stack);
+    }
+
+    static void storeind(SamInterpreter vm) {
+        SM.storeind(vm.stack);
+    }
+
+    //no modo de chamadas a pilha de retornos também acompanha o código compilado
+    static void jsr(SamInterpreter vm, int returnAddress) {
+        vm.stack.push(returnAddress);
+        if (vm.calls != null) {
+            vm.calls.call(returnAddress);
+        }
+    }
+
+    static int jumpind(SamInterpreter vm, int pc) {
+        return vm.calls == null ? CON.jumpind(vm.stack, vm.program.length())
+                : vm.calls.jumpind(vm.stack, pc, vm.program.length());
+    }
+
+    static int jsrind(SamInterpreter vm, int pc) {
+        return vm.calls == null ? CON.jsrind(vm.stack, pc, vm.program.length())
+                : vm.calls.jsrind(vm.stack, pc, vm.program.length());
+    }
+
+    static int skip(SamInterpreter vm, int pc) {
+        return CON.skip(vm.stack, pc);
+    }
+}
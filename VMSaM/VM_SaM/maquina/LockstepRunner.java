@@ -0,0 +1,827 @@
+package maquina;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+//executa o mesmo programa SaM sobre muitas entradas em lockstep. As lanes que
+//estão na mesma linha com a mesma altura de pilha formam um grupo, e cada
+//instrução é decodificada uma vez e aplicada a todas as lanes do grupo. A pilha
+//do grupo é guardada por posição (structure of arrays): a posição r da pilha das
+//n lanes fica em stack[r * n .. r * n + n), então ADD, PUSH, LOAD etc. viram
+//laços simples sobre linhas contíguas, que o C2 vetoriza, ou System.arraycopy.
+//As globais usam a mesma disposição; fp, heap e I/O são de cada lane.
+//
+//Um JUMPC em que as lanes discordam divide o grupo; desvios calculados e POPSP
+//dividem pelo valor. Os grupos esperam numa fila pela linha (o de menor pc
+//executa primeiro), e grupos que chegam à mesma linha com a mesma altura voltam a
+//se juntar. Grupos com menos de MIN_LANES lanes, e lanes que encontram um erro,
+//continuam uma a uma no SamInterpreter a partir do estado da instrução que
+//falhou, então resultados e mensagens de erro são os da execução normal.
+public final class LockstepRunner {
+    //abaixo disso um grupo não compensa: as lanes seguem no SamInterpreter
+    public static final int MIN_LANES = 4;
+
+    private final SamProgram program;
+    private final int heapSize;
+    private final int maxStackDepth;
+
+    public LockstepRunner(SamProgram program) {
+        this(program, BatchRunner.DEFAULT_HEAP_SIZE, OperandStack.DEFAULT_MAX_DEPTH);
+    }
+
+    public LockstepRunner(SamProgram program, int heapSize, int maxStackDepth) {
+        this.program = program;
+        this.heapSize = heapSize;
+        this.maxStackDepth = maxStackDepth;
+    }
+
+    //executa o programa uma vez por entrada; o resultado i (de nome "i") é o da entrada i
+    public List<BatchRunner.Result> run(List<byte[]> inputs) {
+        return new Batch(inputs).run();
+    }
+
+    //lanes que executam juntas: mesma linha e mesma altura de pilha
+    private static final class Group {
+        int n;
+        int[] lanes;   //número da entrada de cada lane
+        int[] stack;   //posição r da pilha em stack[r * n .. r * n + n)
+        int sp;
+        int[] fp;
+        int[] globals; //slot g em globals[g * n .. g * n + n)
+        int pc;
+        long executed; //instruções ainda não somadas às lanes
+
+        Group(int[] lanes, int rows, int globalCount) {
+            this.n = lanes.length;
+            this.lanes = lanes;
+            this.stack = new int[Math.max(rows, 16) * n];
+            this.fp = new int[n];
+            this.globals = new int[globalCount * n];
+        }
+
+        void reserve(int rows) {
+            if ((long) rows * n > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(rows, stack.length / n * 2) * n);
+            }
+        }
+
+        //separa as lanes marcadas num grupo novo, na mesma linha e com a mesma altura
+        Group extract(boolean[] mask) {
+            int k = 0;
+            for (boolean marked : mask) {
+                if (marked) {
+                    k++;
+                }
+            }
+            if (k == 0) {
+                return null;
+            }
+            int[] take = new int[k];
+            int[] keep = new int[n - k];
+            for (int i = 0, t = 0, s = 0; i < n; i++) {
+                if (mask[i]) {
+                    take[t++] = i;
+                } else {
+                    keep[s++] = i;
+                }
+            }
+            Group out = select(take);
+            if (keep.length > 0) {
+                Group rest = select(keep);
+                lanes = rest.lanes;
+                stack = rest.stack;
+                fp = rest.fp;
+                globals = rest.globals;
+            } else {
+                lanes = new int[0];
+                fp = new int[0];
+            }
+            n = keep.length;
+            return out;
+        }
+
+        private Group select(int[] positions) {
+            int k = positions.length;
+            int[] ids = new int[k];
+            for (int i = 0; i < k; i++) {
+                ids[i] = lanes[positions[i]];
+            }
+            Group out = new Group(ids, sp + 1, globals.length / n);
+            out.sp = sp;
+            out.pc = pc;
+            gather(stack, n, sp, positions, out.stack);
+            gather(globals, n, globals.length / n, positions, out.globals);
+            for (int i = 0; i < k; i++) {
+                out.fp[i] = fp[positions[i]];
+            }
+            return out;
+        }
+
+        private static void gather(int[] from, int n, int rows, int[] positions, int[] to) {
+            int k = positions.length;
+            for (int r = 0; r < rows; r++) {
+                int src = r * n;
+                int dst = r * k;
+                for (int i = 0; i < k; i++) {
+                    to[dst + i] = from[src + positions[i]];
+                }
+            }
+        }
+
+        //junta dois grupos na mesma linha e com a mesma altura
+        static Group merge(Group a, Group b) {
+            int[] ids = Arrays.copyOf(a.lanes, a.n + b.n);
+            System.arraycopy(b.lanes, 0, ids, a.n, b.n);
+            int globalCount = a.globals.length / a.n;
+            Group out = new Group(ids, a.sp + 1, globalCount);
+            out.sp = a.sp;
+            out.pc = a.pc;
+            concat(a.stack, a.n, b.stack, b.n, a.sp, out.stack);
+            concat(a.globals, a.n, b.globals, b.n, globalCount, out.globals);
+            System.arraycopy(a.fp, 0, out.fp, 0, a.n);
+            System.arraycopy(b.fp, 0, out.fp, a.n, b.n);
+            return out;
+        }
+
+        private static void concat(int[] a, int an, int[] b, int bn, int rows, int[] to) {
+            for (int r = 0; r < rows; r++) {
+                System.arraycopy(a, r * an, to, r * (an + bn), an);
+                System.arraycopy(b, r * bn, to, r * (an + bn) + an, bn);
+            }
+        }
+    }
+
+    //estado de uma execução: entrada, saída, heap e resultado de cada lane
+    private final class Batch {
+        final VmInput[] inputs;
+        final ByteArrayOutputStream[] outputs;
+        final BufferedOutput[] outs;
+        final Heap[] heaps;
+        final long[] instructions;
+        final BatchRunner.Result[] results;
+        final PriorityQueue<Group> ready = new PriorityQueue<>(Comparator.comparingInt(g -> g.pc));
+
+        Batch(List<byte[]> data) {
+            int lanes = data.size();
+            inputs = new VmInput[lanes];
+            outputs = new ByteArrayOutputStream[lanes];
+            outs = new BufferedOutput[lanes];
+            heaps = new Heap[lanes];
+            instructions = new long[lanes];
+            results = new BatchRunner.Result[lanes];
+            for (int i = 0; i < lanes; i++) {
+                inputs[i] = new ChannelInput(Channels.newChannel(new ByteArrayInputStream(data.get(i))));
+                outputs[i] = new ByteArrayOutputStream();
+                outs[i] = new BufferedOutput(outputs[i]);
+                heaps[i] = new Heap(heapSize);
+            }
+        }
+
+        List<BatchRunner.Result> run() {
+            int lanes = results.length;
+            if (lanes > 0) {
+                int[] ids = new int[lanes];
+                Arrays.setAll(ids, i -> i);
+                ready.add(new Group(ids, 16, program.symbols.length));
+            }
+            List<Group> other = new ArrayList<>();
+            while (!ready.isEmpty()) {
+                Group g = ready.poll();
+                while (!ready.isEmpty() && ready.peek().pc == g.pc) {
+                    Group o = ready.poll();
+                    if (o.sp == g.sp) {
+                        flush(g);
+                        flush(o);
+                        g = Group.merge(g, o);
+                    } else {
+                        other.add(o);
+                    }
+                }
+                ready.addAll(other);
+                other.clear();
+                if (g.n < MIN_LANES) {
+                    scalar(g);
+                } else {
+                    execute(g);
+                }
+            }
+            return List.of(results);
+        }
+
+        //executa o grupo até ele terminar, se dividir ou desviar para uma linha
+        //que não é a menor da fila
+        private void execute(Group g) {
+            int[] opcodes = program.opcodes;
+            int[] operands = program.operands;
+            int length = opcodes.length;
+            while (true) {
+                int pc = g.pc;
+                if (pc >= length) {
+                    finish(g, BatchRunner.ExitState.END_OF_PROGRAM);
+                    return;
+                }
+                int op = Opcodes.baseOpcode(opcodes[pc]);
+                int operand = operands[pc];
+                //a altura é a mesma em todas as lanes: falta de valores ou pilha cheia
+                //vale para o grupo todo, e o SamInterpreter produz o erro
+                if (g.sp < StackVerifier.need(op, operand) || g.sp >= maxStackDepth) {
+                    scalar(g);
+                    return;
+                }
+                g.reserve(g.sp + 1);
+                g.executed++;
+                int n = g.n;
+                int[] st = g.stack;
+                int sp = g.sp;
+                int top = (sp - 1) * n;
+                int below = (sp - 2) * n;
+                int next = pc + 1;
+                switch (op) {
+                    case Opcodes.NOP, Opcodes.SWAP -> { } //SWAP não muda a pilha (StackManip.swap)
+                    case Opcodes.PUSH -> Arrays.fill(st, sp * n, sp * n + n, operand);
+                    case Opcodes.POP -> { }
+                    case Opcodes.STORE -> System.arraycopy(st, top, g.globals, operand * n, n);
+                    case Opcodes.LOAD -> System.arraycopy(g.globals, operand * n, st, sp * n, n);
+                    case Opcodes.DUP -> System.arraycopy(st, top, st, sp * n, n);
+                    case Opcodes.PUSHSP -> Arrays.fill(st, sp * n, sp * n + n, sp);
+                    case Opcodes.PUSHFBR -> System.arraycopy(g.fp, 0, st, sp * n, n);
+                    case Opcodes.POPFBR -> System.arraycopy(st, top, g.fp, 0, n);
+                    case Opcodes.LINK -> {
+                        System.arraycopy(g.fp, 0, st, sp * n, n);
+                        Arrays.fill(g.fp, sp);
+                    }
+                    case Opcodes.STOP -> {
+                        finish(g, BatchRunner.ExitState.STOPPED);
+                        return;
+                    }
+                    case Opcodes.ADD -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] += st[top + i];
+                        }
+                    }
+                    case Opcodes.SUB -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] -= st[top + i];
+                        }
+                    }
+                    case Opcodes.TIMES -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] *= st[top + i];
+                        }
+                    }
+                    case Opcodes.DIV, Opcodes.MOD -> {
+                        boolean[] zero = null;
+                        for (int i = 0; i < n; i++) {
+                            int a = st[top + i];
+                            if (a == 0) {
+                                zero = mark(zero, n, i);
+                            } else {
+                                st[below + i] = op == Opcodes.DIV ? st[below + i] / a : st[below + i] % a;
+                            }
+                        }
+                        if (zero != null && fault(g, zero)) {
+                            return;
+                        }
+                    }
+                    case Opcodes.LSHIFT -> {
+                        for (int i = 0; i < n; i++) {
+                            st[top + i] <<= operand;
+                        }
+                    }
+                    case Opcodes.RSHIFT -> {
+                        for (int i = 0; i < n; i++) {
+                            st[top + i] >>= operand;
+                        }
+                    }
+                    case Opcodes.NOT, Opcodes.ISNIL -> {
+                        for (int i = 0; i < n; i++) {
+                            st[top + i] = st[top + i] == 0 ? 1 : 0;
+                        }
+                    }
+                    case Opcodes.ISPOS -> {
+                        for (int i = 0; i < n; i++) {
+                            st[top + i] = st[top + i] > 0 ? 1 : 0;
+                        }
+                    }
+                    case Opcodes.ISNEG -> {
+                        for (int i = 0; i < n; i++) {
+                            st[top + i] = st[top + i] < 0 ? 1 : 0;
+                        }
+                    }
+                    case Opcodes.BITNOT -> {
+                        for (int i = 0; i < n; i++) {
+                            st[top + i] = ~st[top + i];
+                        }
+                    }
+                    //OR se comporta como AND, como em Arithmetic_Logic.or
+                    case Opcodes.OR, Opcodes.AND -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] = st[below + i] != 0 && st[top + i] != 0 ? 1 : 0;
+                        }
+                    }
+                    case Opcodes.NAND -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] = st[below + i] != 0 && st[top + i] != 0 ? 0 : 1;
+                        }
+                    }
+                    case Opcodes.XOR -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] = (st[below + i] == 0) != (st[top + i] == 0) ? 1 : 0;
+                        }
+                    }
+                    case Opcodes.BITAND -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] &= st[top + i];
+                        }
+                    }
+                    case Opcodes.BITOR -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] |= st[top + i];
+                        }
+                    }
+                    case Opcodes.BITXOR -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] ^= st[top + i];
+                        }
+                    }
+                    case Opcodes.BITNAND -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] = ~(st[below + i] & st[top + i]);
+                        }
+                    }
+                    case Opcodes.GREATER -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] = st[below + i] > st[top + i] ? 1 : 0;
+                        }
+                    }
+                    case Opcodes.LESS -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] = st[below + i] < st[top + i] ? 1 : 0;
+                        }
+                    }
+                    case Opcodes.EQUAL -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] = st[below + i] == st[top + i] ? 1 : 0;
+                        }
+                    }
+                    case Opcodes.CMP -> {
+                        for (int i = 0; i < n; i++) {
+                            st[below + i] = Integer.compare(st[below + i], st[top + i]);
+                        }
+                    }
+                    case Opcodes.MALLOC -> {
+                        boolean[] failed = null;
+                        for (int i = 0; i < n; i++) {
+                            try {
+                                st[top + i] = heaps[g.lanes[i]].malloc(st[top + i]);
+                            } catch (RuntimeException e) {
+                                failed = mark(failed, n, i);
+                            }
+                        }
+                        if (failed != null && fault(g, failed)) {
+                            return;
+                        }
+                    }
+                    case Opcodes.FREE -> {
+                        boolean[] failed = null;
+                        for (int i = 0; i < n; i++) {
+                            try {
+                                heaps[g.lanes[i]].free(st[top + i]);
+                            } catch (RuntimeException e) {
+                                failed = mark(failed, n, i);
+                            }
+                        }
+                        if (failed != null && fault(g, failed)) {
+                            return;
+                        }
+                    }
+                    case Opcodes.PUSHIND -> {
+                        //depois de desempilhar o endereço a pilha tem sp - 1 valores
+                        boolean[] invalid = null;
+                        for (int i = 0; i < n; i++) {
+                            int address = st[top + i];
+                            if (address < 0 || address >= sp - 1) {
+                                invalid = mark(invalid, n, i);
+                            } else {
+                                st[top + i] = st[(sp - 2 - address) * n + i];
+                            }
+                        }
+                        if (invalid != null && fault(g, invalid)) {
+                            return;
+                        }
+                    }
+                    case Opcodes.STOREIND -> {
+                        boolean[] invalid = null;
+                        for (int i = 0; i < n; i++) {
+                            int m = st[below + i];
+                            if (m < 0 || m >= sp - 2) {
+                                invalid = mark(invalid, n, i);
+                            }
+                        }
+                        if (invalid != null && fault(g, invalid)) {
+                            return;
+                        }
+                        n = g.n;
+                        st = g.stack;
+                        top = (sp - 1) * n;
+                        below = (sp - 2) * n;
+                        for (int i = 0; i < n; i++) {
+                            st[(sp - 3 - st[below + i]) * n + i] = st[top + i];
+                        }
+                    }
+                    case Opcodes.ADDSP -> {
+                        if (operand > 0) {
+                            if ((long) sp + operand > maxStackDepth) {
+                                g.executed--;
+                                scalar(g);
+                                return;
+                            }
+                            g.reserve(sp + operand);
+                            Arrays.fill(g.stack, sp * n, (sp + operand) * n, 0);
+                        }
+                    }
+                    case Opcodes.PUSHOFF, Opcodes.STOREOFF -> {
+                        //PUSHOFF lê e STOREOFF grava fp + offset; um endereço além do topo
+                        //completa a pilha com zeros, e isso precisa ser igual em todas as lanes
+                        int size = op == Opcodes.STOREOFF ? sp - 1 : sp;
+                        int grown = Math.max(size, g.fp[0] + operand + 1);
+                        boolean[] irregular = null;
+                        for (int i = 0; i < n; i++) {
+                            int address = g.fp[i] + operand;
+                            if (address < 0 || Math.max(size, address + 1) != grown) {
+                                irregular = mark(irregular, n, i);
+                            }
+                        }
+                        if (irregular != null) {
+                            if (fault(g, irregular)) {
+                                return;
+                            }
+                            n = g.n;
+                            grown = Math.max(size, g.fp[0] + operand + 1);
+                        }
+                        if (grown + (op == Opcodes.PUSHOFF ? 1 : 0) > maxStackDepth) {
+                            g.executed--;
+                            scalar(g);
+                            return;
+                        }
+                        g.reserve(grown + 1);
+                        st = g.stack;
+                        if (op == Opcodes.PUSHOFF) {
+                            Arrays.fill(st, size * n, grown * n, 0);
+                            for (int i = 0; i < n; i++) {
+                                st[grown * n + i] = st[(g.fp[i] + operand) * n + i];
+                            }
+                        } else {
+                            int[] values = Arrays.copyOfRange(st, size * n, size * n + n);
+                            Arrays.fill(st, size * n, grown * n, 0);
+                            for (int i = 0; i < n; i++) {
+                                st[(g.fp[i] + operand) * n + i] = values[i];
+                            }
+                        }
+                        g.sp = grown + (op == Opcodes.PUSHOFF ? 1 : 0);
+                        g.pc = next;
+                        continue;
+                    }
+                    case Opcodes.PRINT, Opcodes.PRINTLN -> {
+                        for (int i = 0; i < n; i++) {
+                            outs[g.lanes[i]].printInt(st[top + i]);
+                        }
+                    }
+                    case Opcodes.PRINTC -> {
+                        for (int i = 0; i < n; i++) {
+                            outs[g.lanes[i]].printChar((char) st[top + i]);
+                        }
+                    }
+                    case Opcodes.DUMP -> {
+                        for (int i = 0; i < n; i++) {
+                            StringBuilder sb = new StringBuilder("Stack: [");
+                            for (int r = 0; r < sp; r++) {
+                                if (r > 0) {
+                                    sb.append(", ");
+                                }
+                                sb.append(st[r * n + i]);
+                            }
+                            outs[g.lanes[i]].printLine(sb.append(']').toString());
+                        }
+                    }
+                    case Opcodes.READ, Opcodes.READC, Opcodes.READF -> {
+                        if (!read(g, op)) {
+                            return;
+                        }
+                    }
+                    case Opcodes.JUMP -> next = operand;
+                    case Opcodes.JUMPC -> {
+                        boolean[] taken = new boolean[n];
+                        int count = 0;
+                        for (int i = 0; i < n; i++) {
+                            taken[i] = st[top + i] != 0;
+                            count += taken[i] ? 1 : 0;
+                        }
+                        if (count == n) {
+                            next = operand;
+                        } else if (count > 0) {
+                            //as lanes que desviam seguem num grupo próprio
+                            g.sp = sp - 1;
+                            flush(g);
+                            Group branch = g.extract(taken);
+                            branch.pc = operand;
+                            ready.add(branch);
+                            g.pc = next;
+                            ready.add(g);
+                            return;
+                        }
+                    }
+                    case Opcodes.JSR -> {
+                        Arrays.fill(st, sp * n, sp * n + n, pc + 1);
+                        next = operand;
+                    }
+                    case Opcodes.JUMPIND, Opcodes.JSRIND, Opcodes.SKIP -> {
+                        int[] targets = new int[n];
+                        boolean[] invalid = null;
+                        for (int i = 0; i < n; i++) {
+                            targets[i] = op == Opcodes.SKIP ? pc + st[top + i] + 1 : st[top + i];
+                            if (targets[i] < 0 || (op != Opcodes.SKIP && targets[i] >= length)) {
+                                invalid = mark(invalid, n, i);
+                            }
+                        }
+                        if (invalid != null) {
+                            targets = keep(targets, invalid);
+                            if (fault(g, invalid)) {
+                                return;
+                            }
+                        }
+                        if (op == Opcodes.JSRIND) {
+                            Arrays.fill(g.stack, (sp - 1) * g.n, sp * g.n, pc + 1);
+                        } else {
+                            g.sp = sp - 1;
+                        }
+                        split(g, targets, false);
+                        return;
+                    }
+                    case Opcodes.POPSP -> {
+                        //POPSP corta a pilha de cada lane para o valor desempilhado
+                        int[] heights = new int[n];
+                        for (int i = 0; i < n; i++) {
+                            int size = st[top + i];
+                            heights[i] = size < sp - 1 ? Math.max(size, 0) : sp - 1;
+                        }
+                        g.pc = next;
+                        split(g, heights, true);
+                        return;
+                    }
+                    default -> throw new IllegalStateException("Invalid opcode at line " + (pc + 1));
+                }
+                g.sp = sp + stackEffect(op, operand);
+                if (next != pc + 1) {
+                    g.pc = next;
+                    //só continua direto se ainda for o grupo de menor linha
+                    if (!ready.isEmpty() && ready.peek().pc <= next) {
+                        ready.add(g);
+                        return;
+                    }
+                } else {
+                    g.pc = next;
+                }
+            }
+        }
+
+        //variação da altura nas instruções que não a calculam sozinhas
+        private static int stackEffect(int op, int operand) {
+            return switch (op) {
+                case Opcodes.PUSH, Opcodes.LOAD, Opcodes.DUP, Opcodes.PUSHSP, Opcodes.PUSHFBR,
+                     Opcodes.LINK, Opcodes.JSR, Opcodes.READ, Opcodes.READC, Opcodes.READF -> 1;
+                case Opcodes.POP, Opcodes.STORE, Opcodes.POPFBR, Opcodes.FREE, Opcodes.JUMPC,
+                     Opcodes.ADD, Opcodes.SUB, Opcodes.TIMES, Opcodes.DIV, Opcodes.MOD,
+                     Opcodes.OR, Opcodes.AND, Opcodes.XOR, Opcodes.NAND, Opcodes.BITAND,
+                     Opcodes.BITOR, Opcodes.BITXOR, Opcodes.BITNAND, Opcodes.GREATER,
+                     Opcodes.LESS, Opcodes.EQUAL, Opcodes.CMP -> -1;
+                case Opcodes.STOREIND -> -2;
+                case Opcodes.ADDSP -> operand;
+                default -> 0;
+            };
+        }
+
+        //leitura lane a lane; uma lane sem entrada válida termina com ERROR, como
+        //no SamInterpreter (a pilha não muda quando a leitura falha)
+        private boolean read(Group g, int op) {
+            int n = g.n;
+            int[] values = new int[n];
+            boolean[] failed = null;
+            String[] errors = null;
+            for (int i = 0; i < n; i++) {
+                VmInput in = inputs[g.lanes[i]];
+                try {
+                    values[i] = switch (op) {
+                        case Opcodes.READ -> in.readInt();
+                        case Opcodes.READC -> in.readChar();
+                        default -> (int) in.readFloat();
+                    };
+                } catch (RuntimeException e) {
+                    failed = mark(failed, n, i);
+                    if (errors == null) {
+                        errors = new String[n];
+                    }
+                    errors[i] = BatchRunner.errorMessage(e);
+                }
+            }
+            if (failed != null) {
+                values = keep(values, failed);
+                String[] messages = new String[n];
+                int k = 0;
+                for (int i = 0; i < n; i++) {
+                    if (failed[i]) {
+                        messages[k++] = errors[i];
+                    }
+                }
+                flush(g);
+                Group bad = g.extract(failed);
+                for (int i = 0; i < bad.n; i++) {
+                    complete(bad, i, BatchRunner.ExitState.ERROR, messages[i]);
+                }
+                if (g.n == 0) {
+                    return false;
+                }
+            }
+            System.arraycopy(values, 0, g.stack, g.sp * g.n, g.n);
+            return true;
+        }
+
+        //divide o grupo pelas lanes com o mesmo valor: o destino do desvio ou, com
+        //heights, a nova altura da pilha. Cada parte volta para a fila
+        private void split(Group g, int[] values, boolean heights) {
+            flush(g);
+            while (g != null) {
+                int value = values[0];
+                boolean[] other = new boolean[g.n];
+                boolean any = false;
+                for (int i = 0; i < g.n; i++) {
+                    other[i] = values[i] != value;
+                    any |= other[i];
+                }
+                int[] rest = any ? keep(values, negate(other)) : null;
+                Group part = any ? g.extract(other) : null;
+                if (heights) {
+                    g.sp = value;
+                } else {
+                    g.pc = value;
+                }
+                ready.add(g);
+                g = part;
+                values = rest;
+            }
+        }
+
+        //as lanes marcadas voltam a executar a instrução corrente no SamInterpreter;
+        //devolve true se o grupo ficou sem lanes
+        private boolean fault(Group g, boolean[] lanes) {
+            g.executed--;
+            flush(g);
+            Group bad = g.extract(lanes);
+            scalar(bad);
+            if (g.n == 0) {
+                return true;
+            }
+            g.executed++;
+            return false;
+        }
+
+        //continua cada lane do grupo no SamInterpreter, do ponto em que o grupo está
+        private void scalar(Group g) {
+            flush(g);
+            for (int i = 0; i < g.n; i++) {
+                int lane = g.lanes[i];
+                SamInterpreter vm = new SamInterpreter(program, heaps[lane], maxStackDepth);
+                vm.stack.extendTo(g.sp);
+                int[] elements = vm.stack.elements();
+                for (int r = 0; r < g.sp; r++) {
+                    elements[r] = g.stack[r * g.n + i];
+                }
+                for (int slot = 0; slot < vm.globals.length; slot++) {
+                    vm.globals[slot] = g.globals[slot * g.n + i];
+                }
+                vm.registers.pc = g.pc;
+                vm.registers.fp = g.fp[i];
+                String error = null;
+                try {
+                    vm.execute(IO.headless(inputs[lane], outs[lane]), new Arithmetic_Logic(), new RegisterManip(),
+                            new StackManip(), new Control());
+                } catch (RuntimeException | StackOverflowError e) {
+                    error = BatchRunner.errorMessage(e);
+                }
+                BatchRunner.Result r = BatchRunner.result(String.valueOf(lane), vm, outputs[lane],
+                        error == null ? null : BatchRunner.ExitState.ERROR, error);
+                results[lane] = new BatchRunner.Result(r.name(), r.state(), r.output(),
+                        instructions[lane] + r.instructions(), r.exitValue(), r.error());
+            }
+        }
+
+        private void finish(Group g, BatchRunner.ExitState state) {
+            flush(g);
+            for (int i = 0; i < g.n; i++) {
+                complete(g, i, state, null);
+            }
+        }
+
+        private void complete(Group g, int i, BatchRunner.ExitState state, String error) {
+            int lane = g.lanes[i];
+            outs[lane].flush();
+            Integer exitValue = g.sp > 0 ? g.stack[(g.sp - 1) * g.n + i] : null;
+            results[lane] = new BatchRunner.Result(String.valueOf(lane), state,
+                    outputs[lane].toString(StandardCharsets.UTF_8), instructions[lane], exitValue, error);
+        }
+
+        //soma às lanes as instruções que o grupo executou
+        private void flush(Group g) {
+            if (g.executed != 0) {
+                for (int i = 0; i < g.n; i++) {
+                    instructions[g.lanes[i]] += g.executed;
+                }
+                g.executed = 0;
+            }
+        }
+    }
+
+    private static boolean[] mark(boolean[] mask, int n, int i) {
+        if (mask == null) {
+            mask = new boolean[n];
+        }
+        mask[i] = true;
+        return mask;
+    }
+
+    private static boolean[] negate(boolean[] mask) {
+        boolean[] out = new boolean[mask.length];
+        for (int i = 0; i < mask.length; i++) {
+            out[i] = !mask[i];
+        }
+        return out;
+    }
+
+    //valores das posições não marcadas em removed, na mesma ordem
+    private static int[] keep(int[] values, boolean[] removed) {
+        int k = 0;
+        int[] out = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (!removed[i]) {
+                out[k++] = values[i];
+            }
+        }
+        return Arrays.copyOf(out, k);
+    }
+
+    public static void main(String[] args) throws IOException {
+        //uso: LockstepRunner [--scalar] programa.sam entradas.txt; cada linha de
+        //entradas.txt é a entrada de uma lane. Com --scalar as mesmas entradas
+        //executam uma a uma no SamInterpreter, para comparação
+        boolean scalar = args.length > 0 && args[0].equals("--scalar");
+        int first = scalar ? 1 : 0;
+        if (args.length - first != 2) {
+            System.err.println("Uso: LockstepRunner [--scalar] programa.sam entradas.txt");
+            System.exit(2);
+        }
+        SamProgram program = new StreamingAssembler().assemble(Paths.get(args[first]));
+        List<byte[]> inputs = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(args[first + 1]))) {
+            inputs.add(line.getBytes(StandardCharsets.UTF_8));
+        }
+        long start = System.nanoTime();
+        List<BatchRunner.Result> results;
+        if (scalar) {
+            results = new ArrayList<>(inputs.size());
+            for (byte[] input : inputs) {
+                SamInterpreter vm = new SamInterpreter(program, BatchRunner.DEFAULT_HEAP_SIZE,
+                        OperandStack.DEFAULT_MAX_DEPTH);
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                String error = null;
+                try {
+                    vm.execute(IO.headless(new ChannelInput(Channels.newChannel(new ByteArrayInputStream(input))),
+                            new BufferedOutput(output)), new Arithmetic_Logic(), new RegisterManip(),
+                            new StackManip(), new Control());
+                } catch (RuntimeException | StackOverflowError e) {
+                    error = BatchRunner.errorMessage(e);
+                }
+                results.add(BatchRunner.result(String.valueOf(results.size()), vm, output,
+                        error == null ? null : BatchRunner.ExitState.ERROR, error));
+            }
+        } else {
+            results = new LockstepRunner(program).run(inputs);
+        }
+        long elapsed = System.nanoTime() - start;
+        for (BatchRunner.Result result : results) {
+            System.out.println(result.name() + ": " + result.state() + ", " + result.instructions()
+                    + " instructions" + (result.error() == null ? "" : ", " + result.error())
+                    + ", output: " + result.output().replace("\n", "\\n"));
+        }
+        System.out.printf("%d lanes in %.1f ms%n", results.size(), elapsed / 1e6);
+    }
+}
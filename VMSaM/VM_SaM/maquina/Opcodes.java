@@ -0,0 +1,215 @@
+package maquina;
+
+import java.util.HashMap;
+
+//enumeração única do conjunto de instruções da máquina; os códigos são inteiros
+//para que o laço de despacho do SamInterpreter seja um único tableswitch
+//(os códigos também são gravados no formato binário de SamBinary)
+public final class Opcodes {
+    //tipos de operando
+    public static final int NO_OPERAND = 0;
+    public static final int INT_OPERAND = 1;
+    public static final int LABEL_OPERAND = 2;
+    public static final int VAR_OPERAND = 3;
+
+    //linhas sem efeito (rótulos e linhas vazias)
+    public static final int NOP = 0;
+
+    //StackManip
+    public static final int PUSH = 1;
+    public static final int POP = 2;
+    public static final int STORE = 3;
+    public static final int LOAD = 4;
+    public static final int DUP = 5;
+    public static final int SWAP = 6;
+    public static final int MALLOC = 7;
+    public static final int PUSHIND = 8;
+    public static final int STOREIND = 9;
+    public static final int ADDSP = 10;
+    public static final int PUSHOFF = 11;
+    public static final int STOREOFF = 12;
+
+    //RegisterManip
+    public static final int PUSHSP = 13;
+    public static final int POPSP = 14;
+    public static final int PUSHFBR = 15;
+    public static final int POPFBR = 16;
+    public static final int LINK = 17;
+    public static final int STOP = 18;
+
+    //Arithmetic_Logic
+    public static final int ADD = 19;
+    public static final int SUB = 20;
+    public static final int TIMES = 21;
+    public static final int DIV = 22;
+    public static final int MOD = 23;
+    public static final int LSHIFT = 24;
+    public static final int RSHIFT = 25;
+    public static final int NOT = 26;
+    public static final int OR = 27;
+    public static final int AND = 28;
+    public static final int XOR = 29;
+    public static final int NAND = 30;
+    public static final int BITNOT = 31;
+    public static final int BITAND = 32;
+    public static final int BITOR = 33;
+    public static final int BITXOR = 34;
+    public static final int BITNAND = 35;
+    public static final int GREATER = 36;
+    public static final int LESS = 37;
+    public static final int EQUAL = 38;
+    public static final int ISNIL = 39;
+    public static final int ISPOS = 40;
+    public static final int ISNEG = 41;
+    public static final int CMP = 42;
+
+    //IO
+    public static final int PRINT = 43;
+    public static final int READ = 44;
+    public static final int READC = 45;
+    public static final int READF = 46;
+    public static final int PRINTLN = 47;
+    public static final int PRINTC = 48;
+    public static final int DUMP = 49;
+
+    //Control
+    public static final int JUMP = 50;
+    public static final int JUMPC = 51;
+    public static final int JUMPIND = 52;
+    public static final int JSR = 53;
+    public static final int JSRIND = 54;
+    public static final int SKIP = 55;
+
+    //StackManip (alocador da heap)
+    public static final int FREE = 56;
+
+    //superinstruções geradas pelo Fuser (não aceitas no texto do programa);
+    //ocupam a posição da primeira instrução da sequência e as demais posições
+    //mantêm as instruções originais, para desvios que caiam no meio da sequência
+    public static final int INCOFF = 57;         //PUSHOFF n; PUSH k; ADD; STOREOFF n
+    public static final int DUP_STOREOFF = 58;   //DUP; STOREOFF n
+    public static final int PUSH_LESS_JUMPC = 59;    //PUSH k; LESS; JUMPC L
+    public static final int PUSH_GREATER_JUMPC = 60; //PUSH k; GREATER; JUMPC L
+    public static final int PUSH_EQUAL_JUMPC = 61;   //PUSH k; EQUAL; JUMPC L
+
+    public static final int COUNT = 62;
+
+    //mnemônico de cada opcode, indexado pelo próprio código
+    static final String[] MNEMONICS = new String[COUNT];
+    //tipo de operando de cada opcode
+    static final int[] OPERAND_KIND = new int[COUNT];
+    //quantas posições do programa cada opcode consome (maior que 1 só nas superinstruções)
+    static final int[] WIDTH = new int[COUNT];
+    private static final HashMap<String, Integer> BY_NAME = new HashMap<>();
+
+    static {
+        define(NOP, "NOP", NO_OPERAND);
+        define(PUSH, "PUSH", INT_OPERAND);
+        define(POP, "POP", NO_OPERAND);
+        define(STORE, "STORE", VAR_OPERAND);
+        define(LOAD, "LOAD", VAR_OPERAND);
+        define(DUP, "DUP", NO_OPERAND);
+        define(SWAP, "SWAP", NO_OPERAND);
+        define(MALLOC, "MALLOC", NO_OPERAND);
+        define(PUSHIND, "PUSHIND", NO_OPERAND);
+        define(STOREIND, "STOREIND", NO_OPERAND);
+        define(ADDSP, "ADDSP", INT_OPERAND);
+        define(PUSHOFF, "PUSHOFF", INT_OPERAND);
+        define(STOREOFF, "STOREOFF", INT_OPERAND);
+        define(PUSHSP, "PUSHSP", NO_OPERAND);
+        define(POPSP, "POPSP", NO_OPERAND);
+        define(PUSHFBR, "PUSHFBR", NO_OPERAND);
+        define(POPFBR, "POPFBR", NO_OPERAND);
+        define(LINK, "LINK", NO_OPERAND);
+        define(STOP, "STOP", NO_OPERAND);
+        define(ADD, "ADD", NO_OPERAND);
+        define(SUB, "SUB", NO_OPERAND);
+        define(TIMES, "TIMES", NO_OPERAND);
+        define(DIV, "DIV", NO_OPERAND);
+        define(MOD, "MOD", NO_OPERAND);
+        define(LSHIFT, "LSHIFT", INT_OPERAND);
+        define(RSHIFT, "RSHIFT", INT_OPERAND);
+        define(NOT, "NOT", NO_OPERAND);
+        define(OR, "OR", NO_OPERAND);
+        define(AND, "AND", NO_OPERAND);
+        define(XOR, "XOR", NO_OPERAND);
+        define(NAND, "NAND", NO_OPERAND);
+        define(BITNOT, "BITNOT", NO_OPERAND);
+        define(BITAND, "BITAND", NO_OPERAND);
+        define(BITOR, "BITOR", NO_OPERAND);
+        define(BITXOR, "BITXOR", NO_OPERAND);
+        define(BITNAND, "BITNAND", NO_OPERAND);
+        define(GREATER, "GREATER", NO_OPERAND);
+        define(LESS, "LESS", NO_OPERAND);
+        define(EQUAL, "EQUAL", NO_OPERAND);
+        define(ISNIL, "ISNIL", NO_OPERAND);
+        define(ISPOS, "ISPOS", NO_OPERAND);
+        define(ISNEG, "ISNEG", NO_OPERAND);
+        define(CMP, "CMP", NO_OPERAND);
+        define(PRINT, "PRINT", NO_OPERAND);
+        define(READ, "READ", NO_OPERAND);
+        define(READC, "READC", NO_OPERAND);
+        define(READF, "READF", NO_OPERAND);
+        define(PRINTLN, "PRINTLN", NO_OPERAND);
+        define(PRINTC, "PRINTC", NO_OPERAND);
+        define(DUMP, "DUMP", NO_OPERAND);
+        define(JUMP, "JUMP", LABEL_OPERAND);
+        define(JUMPC, "JUMPC", LABEL_OPERAND);
+        define(JUMPIND, "JUMPIND", NO_OPERAND);
+        define(JSR, "JSR", LABEL_OPERAND);
+        define(JSRIND, "JSRIND", NO_OPERAND);
+        define(SKIP, "SKIP", NO_OPERAND);
+        define(FREE, "FREE", NO_OPERAND);
+        defineFused(INCOFF, "INCOFF", 4);
+        defineFused(DUP_STOREOFF, "DUP_STOREOFF", 2);
+        defineFused(PUSH_LESS_JUMPC, "PUSH_LESS_JUMPC", 3);
+        defineFused(PUSH_GREATER_JUMPC, "PUSH_GREATER_JUMPC", 3);
+        defineFused(PUSH_EQUAL_JUMPC, "PUSH_EQUAL_JUMPC", 3);
+    }
+
+    private Opcodes() {
+    }
+
+    private static void define(int code, String mnemonic, int operandKind) {
+        MNEMONICS[code] = mnemonic;
+        OPERAND_KIND[code] = operandKind;
+        WIDTH[code] = 1;
+        BY_NAME.put(mnemonic, code);
+    }
+
+    private static void defineFused(int code, String mnemonic, int width) {
+        MNEMONICS[code] = mnemonic;
+        OPERAND_KIND[code] = INT_OPERAND;
+        WIDTH[code] = width;
+    }
+
+    //devolve o opcode do mnemônico, ou -1 se não existir
+    public static int lookup(String mnemonic) {
+        Integer code = BY_NAME.get(mnemonic);
+        return code == null ? -1 : code;
+    }
+
+    public static String mnemonic(int code) {
+        return MNEMONICS[code];
+    }
+
+    public static int operandKind(int code) {
+        return OPERAND_KIND[code];
+    }
+
+    public static int width(int code) {
+        return WIDTH[code];
+    }
+
+    //uma superinstrução ocupa a posição da primeira instrução da sequência e as
+    //posições seguintes guardam as originais, então quem não trata as
+    //superinstruções pode executar só a primeira e seguir pelas demais posições
+    static int baseOpcode(int code) {
+        return switch (code) {
+            case INCOFF -> PUSHOFF;
+            case DUP_STOREOFF -> DUP;
+            case PUSH_LESS_JUMPC, PUSH_GREATER_JUMPC, PUSH_EQUAL_JUMPC -> PUSH;
+            default -> code;
+        };
+    }
+}
@@ -0,0 +1,163 @@
+package maquina;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+//pilha de operandos da máquina: int[] crescente com ponteiro de topo explícito,
+//substitui java.util.Stack<Integer> (sem sincronização e sem boxing)
+public final class OperandStack {
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final int DEFAULT_MAX_DEPTH = 1 << 20;
+
+    private int[] data;
+    private int sp; //número de elementos (próxima posição livre)
+    private final int maxDepth;
+
+    public OperandStack() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_DEPTH);
+    }
+
+    public OperandStack(int initialCapacity, int maxDepth) {
+        if (maxDepth <= 0) {
+            throw new IllegalArgumentException("maxDepth must be positive: " + maxDepth);
+        }
+        this.data = new int[Math.max(1, Math.min(initialCapacity, maxDepth))];
+        this.maxDepth = maxDepth;
+    }
+
+    public void push(int value) {
+        if (sp == data.length) {
+            grow(sp + 1);
+        }
+        data[sp++] = value;
+    }
+
+    //empilha n zeros de uma vez (ADDSP, quadros de variáveis locais): uma única
+    //verificação de capacidade e um preenchimento do array
+    public void pushZeros(int n) {
+        if (n <= 0) {
+            return;
+        }
+        long required = (long) sp + n;
+        if (required > data.length) {
+            grow(required);
+        }
+        //as posições acima do topo podem guardar valores já desempilhados
+        Arrays.fill(data, sp, (int) required, 0);
+        sp = (int) required;
+    }
+
+    //completa a pilha com zeros até ela ter size elementos; não faz nada se já tiver
+    public void extendTo(int size) {
+        if (size > sp) {
+            pushZeros(size - sp);
+        }
+    }
+
+    //descarta os elementos acima dos size primeiros (POPSP, ADDSP negativo)
+    public void truncate(int size) {
+        if (size < sp) {
+            sp = Math.max(size, 0);
+        }
+    }
+
+    public int pop() {
+        if (sp == 0) {
+            throw new EmptyStackException();
+        }
+        return data[--sp];
+    }
+
+    public int peek() {
+        if (sp == 0) {
+            throw new EmptyStackException();
+        }
+        return data[sp - 1];
+    }
+
+    //sem o teste de pilha vazia: só para linhas em que o StackVerifier garante os valores
+    int popUnchecked() {
+        return data[--sp];
+    }
+
+    int peekUnchecked() {
+        return data[sp - 1];
+    }
+
+    //troca o topo, o resultado de uma operação que consome e produz um valor
+    void setTopUnchecked(int value) {
+        data[sp - 1] = value;
+    }
+
+    void dropUnchecked(int n) {
+        sp -= n;
+    }
+
+    //acesso indexado sem o teste de faixa, para quem já conferiu 0 <= index < size()
+    int getUnchecked(int index) {
+        return data[index];
+    }
+
+    void setUnchecked(int index, int value) {
+        data[index] = value;
+    }
+
+    //array interno com os size() elementos a partir da base (para Snapshot); vale
+    //até a próxima operação que faça a pilha crescer
+    int[] elements() {
+        return data;
+    }
+
+    //acesso indexado a partir da base, como Stack.get/Stack.set
+    public int get(int index) {
+        if (index < 0 || index >= sp) {
+            throw new ArrayIndexOutOfBoundsException("Stack index out of range: " + index);
+        }
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        if (index < 0 || index >= sp) {
+            throw new ArrayIndexOutOfBoundsException("Stack index out of range: " + index);
+        }
+        data[index] = value;
+    }
+
+    public int size() {
+        return sp;
+    }
+
+    public boolean isEmpty() {
+        return sp == 0;
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    //crescimento amortizado: dobra a capacidade, sem passar de maxDepth
+    private void grow(long required) {
+        if (required > maxDepth) {
+            throw overflow(maxDepth);
+        }
+        int newCapacity = (int) Math.min((long) data.length * 2, maxDepth);
+        data = Arrays.copyOf(data, Math.max(newCapacity, (int) required));
+    }
+
+    //o mesmo erro de push para quem guarda o topo fora do array (SamInterpreter.runCached)
+    static RuntimeException overflow(int maxDepth) {
+        return new RuntimeException("Stack overflow: maximum depth is " + maxDepth);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < sp; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(data[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
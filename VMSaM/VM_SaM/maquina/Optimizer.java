@@ -0,0 +1,424 @@
+package maquina;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//otimizador do programa montado: dobra de constantes, desvios condicionais
+//constantes, encadeamento de desvios e remoção de código inalcançável.
+//
+//Os endereços do programa são números de linha e aparecem como valores (o
+//endereço de retorno empilhado por JSR, destinos de JUMPIND/JSRIND), então o
+//código não é compactado: as linhas mudam no lugar e as instruções removidas
+//viram NOP, como no Fuser. Só as linhas inalcançáveis do fim do programa saem
+//de fato. O retorno de um JSR nunca é reescrito no meio de uma sequência. Num
+//programa com JUMPIND, JSRIND ou SKIP o destino pode ser calculado em tempo de
+//execução (PUSH 2; STORE x; LOAD x; PUSH 4; ADD; JUMPIND chega à linha 6), então
+//toda linha é entrada: só os desvios são encadeados e nada é removido (o
+//programa maquina/jumpind_calculado.txt imprime 77 com e sem --optimize).
+//Nenhum desvio gerado aponta para depois da última linha: uma sequência dobrada
+//que termina o programa vira NOPs até o fim (maquina/dobra_no_fim.txt).
+public class Optimizer {
+    //rodadas das passadas; cada uma pode expor novas oportunidades para as outras
+    private static final int MAX_ROUNDS = 8;
+
+    private final Arithmetic_Logic al = new Arithmetic_Logic();
+    private int folded;
+    private int branches;
+    private int threaded;
+    private int unreachable;
+
+    public SamProgram optimize(SamProgram program) {
+        folded = 0;
+        branches = 0;
+        threaded = 0;
+        unreachable = 0;
+        int[] opcodes = program.opcodes.clone();
+        int[] operands = program.operands.clone();
+        boolean[] entries = entries(opcodes);
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            boolean changed = fold(opcodes, operands, entries);
+            changed |= thread(opcodes, operands);
+            changed |= removeUnreachable(opcodes, operands, entries);
+            if (!changed) {
+                break;
+            }
+        }
+        threaded = countThreaded(program, opcodes, operands);
+        return truncate(program, opcodes, operands, entries);
+    }
+
+    //desvios do programa original que continuam no lugar com outro destino; os
+    //JUMPs que a dobra inseriu e as reescritas repetidas entre rodadas não contam
+    private static int countThreaded(SamProgram program, int[] opcodes, int[] operands) {
+        int count = 0;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            int slot = jumpSlot(opcodes[pc], pc);
+            if (slot >= 0 && program.opcodes[pc] == opcodes[pc] && program.operands[slot] != operands[slot]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //instruções que deixaram de ser executadas: viraram NOP ou são puladas por um desvio
+    public int removed() {
+        return folded + branches + unreachable;
+    }
+
+    public String report() {
+        return "removed " + removed() + " instructions (" + folded + " folded, " + branches
+                + " in constant branches, " + unreachable + " unreachable), threaded " + threaded + " jumps";
+    }
+
+    // ---- linhas que podem ser alcançadas por desvio calculado ----
+
+    private static boolean[] entries(int[] opcodes) {
+        int length = opcodes.length;
+        boolean[] entries = new boolean[length];
+        for (int op : opcodes) {
+            if (op == Opcodes.SKIP || op == Opcodes.JUMPIND || op == Opcodes.JSRIND) {
+                //o destino pode vir de qualquer valor da pilha, não só de um PUSH:
+                //qualquer linha pode ser destino
+                Arrays.fill(entries, true);
+                return entries;
+            }
+        }
+        for (int pc = 0; pc < length - 1; pc++) {
+            if (opcodes[pc] == Opcodes.JSR) {
+                entries[pc + 1] = true;
+            }
+        }
+        if (length > 0) {
+            entries[0] = true;
+        }
+        return entries;
+    }
+
+    // ---- dobra de constantes e desvios condicionais constantes ----
+
+    //a partir de cada PUSH, executa as instruções seguintes sobre uma pilha só de
+    //constantes enquanto elas não consumirem nada de fora dela. A sequência vira
+    //PUSH k (seguido de JUMP fim, se sobrarem linhas) ou só JUMP fim, se não sobrar
+    //valor; um JUMPC sobre uma constante vira o JUMP para o lado que ele sempre toma.
+    //As linhas internas viram NOP
+    private boolean fold(int[] opcodes, int[] operands, boolean[] entries) {
+        int length = opcodes.length;
+        boolean[] targets = targets(opcodes, operands);
+        //primeiro só encontra as sequências, depois reescreve as que não têm entrada no meio
+        List<int[]> sequences = new ArrayList<>();
+        OperandStack constants = new OperandStack();
+        for (int start = 0; start < length; start++) {
+            if (opcodes[start] != Opcodes.PUSH) {
+                continue;
+            }
+            constants.dropUnchecked(constants.size());
+            constants.push(operands[start]);
+            int end = -1;       //primeira linha depois da melhor sequência
+            int result = 0;     //valor que sobra, se depth == 1
+            int depth = 0;
+            int branch = -1;    //destino fixo, se a sequência termina num JUMPC
+            int pc = start + 1;
+            while (pc < length && !entries[pc] && !targets[pc]) {
+                int op = opcodes[pc];
+                if (op == Opcodes.JUMPC) {
+                    if (constants.size() == 1) {
+                        end = pc + 1;
+                        depth = 0;
+                        branch = constants.peek() != 0 ? operands[pc] : pc + 1;
+                    }
+                    break;
+                }
+                if (op != Opcodes.NOP && !evaluate(op, operands[pc], constants)) {
+                    break;
+                }
+                pc++;
+                if (op != Opcodes.NOP && constants.size() <= 1) {
+                    end = pc;
+                    depth = constants.size();
+                    result = depth == 1 ? constants.peek() : 0;
+                    branch = -1;
+                }
+            }
+            if (end < 0) {
+                continue;
+            }
+            sequences.add(new int[] {start, end, depth, result, branch});
+            start = end - 1;
+        }
+
+        boolean changed = false;
+        for (int[] sequence : sequences) {
+            int start = sequence[0];
+            int end = sequence[1];
+            if (interiorEntry(entries, start, end)) {
+                continue;
+            }
+            int instructions = count(opcodes, start, end);
+            for (int pc = start + 1; pc < end; pc++) {
+                opcodes[pc] = Opcodes.NOP;
+                operands[pc] = 0;
+            }
+            //sequência que termina o programa: as linhas até o fim viram NOP em vez de
+            //um JUMP para length, que não é uma linha do programa
+            boolean last = end >= opcodes.length;
+            if (sequence[4] >= opcodes.length && last) {
+                opcodes[start] = Opcodes.NOP;
+                operands[start] = 0;
+                branches += instructions;
+            } else if (sequence[4] >= 0) {
+                opcodes[start] = Opcodes.JUMP;
+                operands[start] = sequence[4];
+                branches += instructions - 1;
+            } else if (sequence[2] == 0 && last) {
+                opcodes[start] = Opcodes.NOP;
+                operands[start] = 0;
+                folded += instructions;
+            } else if (sequence[2] == 0) {
+                opcodes[start] = Opcodes.JUMP;
+                operands[start] = end;
+                folded += instructions - 1;
+            } else {
+                operands[start] = sequence[3];
+                folded += instructions - 1;
+                //mais de uma linha para pular: um JUMP sai mais barato que os NOPs
+                if (end - start > 2 && !last) {
+                    opcodes[start + 1] = Opcodes.JUMP;
+                    operands[start + 1] = end;
+                    folded--;
+                }
+            }
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean interiorEntry(boolean[] entries, int start, int end) {
+        for (int pc = start + 1; pc < end; pc++) {
+            if (entries[pc]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int count(int[] opcodes, int from, int to) {
+        int n = 0;
+        for (int pc = from; pc < to; pc++) {
+            if (opcodes[pc] != Opcodes.NOP) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    //executa op sobre a pilha de constantes com as mesmas rotinas do interpretador;
+    //devolve false se op não puder ser dobrada (precisa de valores de fora, tem efeito
+    //colateral ou falharia, como a divisão por zero, que fica para a execução)
+    private boolean evaluate(int op, int operand, OperandStack constants) {
+        int size = constants.size();
+        switch (op) {
+            case Opcodes.PUSH -> constants.push(operand);
+            case Opcodes.POP -> {
+                if (size < 1) {
+                    return false;
+                }
+                constants.pop();
+            }
+            case Opcodes.DUP -> {
+                if (size < 1) {
+                    return false;
+                }
+                constants.push(constants.peek());
+            }
+            case Opcodes.LSHIFT, Opcodes.RSHIFT, Opcodes.NOT, Opcodes.BITNOT,
+                 Opcodes.ISNIL, Opcodes.ISPOS, Opcodes.ISNEG -> {
+                if (size < 1) {
+                    return false;
+                }
+                switch (op) {
+                    case Opcodes.LSHIFT -> al.lshift(constants, operand);
+                    case Opcodes.RSHIFT -> al.rshift(constants, operand);
+                    case Opcodes.NOT -> al.not(constants);
+                    case Opcodes.BITNOT -> al.bitnot(constants);
+                    case Opcodes.ISNIL -> al.isnil(constants);
+                    case Opcodes.ISPOS -> al.ispos(constants);
+                    default -> al.isneg(constants);
+                }
+            }
+            case Opcodes.ADD, Opcodes.SUB, Opcodes.TIMES, Opcodes.DIV, Opcodes.MOD, Opcodes.OR,
+                 Opcodes.AND, Opcodes.XOR, Opcodes.NAND, Opcodes.BITAND, Opcodes.BITOR,
+                 Opcodes.BITXOR, Opcodes.BITNAND, Opcodes.GREATER, Opcodes.LESS, Opcodes.EQUAL,
+                 Opcodes.CMP -> {
+                if (size < 2 || ((op == Opcodes.DIV || op == Opcodes.MOD) && constants.peek() == 0)) {
+                    return false;
+                }
+                switch (op) {
+                    case Opcodes.ADD -> al.add(constants);
+                    case Opcodes.SUB -> al.sub(constants);
+                    case Opcodes.TIMES -> al.times(constants);
+                    case Opcodes.DIV -> al.div(constants);
+                    case Opcodes.MOD -> al.mod(constants);
+                    case Opcodes.OR -> al.or(constants);
+                    case Opcodes.AND -> al.and(constants);
+                    case Opcodes.XOR -> al.xor(constants);
+                    case Opcodes.NAND -> al.nand(constants);
+                    case Opcodes.BITAND -> al.bitand(constants);
+                    case Opcodes.BITOR -> al.bitor(constants);
+                    case Opcodes.BITXOR -> al.bitxor(constants);
+                    case Opcodes.BITNAND -> al.bitnand(constants);
+                    case Opcodes.GREATER -> al.greater(constants);
+                    case Opcodes.LESS -> al.less(constants);
+                    case Opcodes.EQUAL -> al.equal(constants);
+                    default -> al.cmp(constants);
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //destinos de desvios diretos
+    private static boolean[] targets(int[] opcodes, int[] operands) {
+        boolean[] targets = new boolean[opcodes.length];
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            int target = target(opcodes, operands, pc);
+            if (target >= 0 && target < opcodes.length) {
+                targets[target] = true;
+            }
+        }
+        return targets;
+    }
+
+    //destino direto da linha pc, ou -1
+    private static int target(int[] opcodes, int[] operands, int pc) {
+        return switch (opcodes[pc]) {
+            case Opcodes.JUMP, Opcodes.JUMPC, Opcodes.JSR -> operands[pc];
+            case Opcodes.PUSH_LESS_JUMPC, Opcodes.PUSH_GREATER_JUMPC, Opcodes.PUSH_EQUAL_JUMPC -> operands[pc + 2];
+            default -> -1;
+        };
+    }
+
+    // ---- encadeamento de desvios ----
+
+    //JUMP e JUMPC que caem em NOPs ou num JUMP seguem direto para o destino final.
+    //Os destinos de JSR ficam como estão: são as entradas de sub-rotina que o
+    //Profiler e o CallStackSampler nomeiam pelo rótulo
+    private boolean thread(int[] opcodes, int[] operands) {
+        boolean changed = false;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            int slot = jumpSlot(opcodes[pc], pc);
+            if (slot < 0) {
+                continue;
+            }
+            int target = finalTarget(opcodes, operands, operands[slot]);
+            if (target != operands[slot]) {
+                operands[slot] = target;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    //posição do operando com o destino de um JUMP/JUMPC, ou -1
+    private static int jumpSlot(int op, int pc) {
+        return switch (op) {
+            case Opcodes.JUMP, Opcodes.JUMPC -> pc;
+            case Opcodes.PUSH_LESS_JUMPC, Opcodes.PUSH_GREATER_JUMPC, Opcodes.PUSH_EQUAL_JUMPC -> pc + 2;
+            default -> -1;
+        };
+    }
+
+    private static int finalTarget(int[] opcodes, int[] operands, int target) {
+        int length = opcodes.length;
+        //um laço de JUMPs sem saída é mantido: o limite de passos o detecta
+        for (int steps = 0; steps < length; steps++) {
+            //destino fora do programa: a execução termina ali, não há o que seguir
+            if (target < 0 || target >= length) {
+                return target;
+            }
+            int next = target;
+            while (next < length - 1 && opcodes[next] == Opcodes.NOP) {
+                next++;
+            }
+            if (opcodes[next] == Opcodes.JUMP) {
+                next = operands[next];
+            }
+            if (next == target) {
+                return target;
+            }
+            target = next;
+        }
+        return target;
+    }
+
+    // ---- código inalcançável ----
+
+    //linhas que nem o fluxo direto a partir das entradas alcança viram NOP
+    private boolean removeUnreachable(int[] opcodes, int[] operands, boolean[] entries) {
+        int length = opcodes.length;
+        boolean[] reached = new boolean[length];
+        int[] work = new int[length];
+        int pending = 0;
+        for (int pc = 0; pc < length; pc++) {
+            if (entries[pc]) {
+                reached[pc] = true;
+                work[pending++] = pc;
+            }
+        }
+        while (pending > 0) {
+            int pc = work[--pending];
+            int op = opcodes[pc];
+            int target = target(opcodes, operands, pc);
+            boolean fallsThrough = op != Opcodes.JUMP && op != Opcodes.STOP && op != Opcodes.JUMPIND;
+            //as posições internas de uma superinstrução guardam as instruções
+            //originais, que o JIT compila; elas continuam alcançáveis
+            int last = fallsThrough ? pc + Opcodes.width(op) : pc;
+            for (int next = pc + 1; next <= last && next < length; next++) {
+                if (!reached[next]) {
+                    reached[next] = true;
+                    work[pending++] = next;
+                }
+            }
+            if (target >= 0 && target < length && !reached[target]) {
+                reached[target] = true;
+                work[pending++] = target;
+            }
+        }
+        boolean changed = false;
+        for (int pc = 0; pc < length; pc++) {
+            if (!reached[pc] && opcodes[pc] != Opcodes.NOP) {
+                opcodes[pc] = Opcodes.NOP;
+                operands[pc] = 0;
+                unreachable++;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    //as linhas NOP do fim do programa saem, com os rótulos que apontavam para elas;
+    //destinos de desvio e entradas ficam, para que continuem endereços válidos
+    private static SamProgram truncate(SamProgram program, int[] opcodes, int[] operands, boolean[] entries) {
+        boolean[] targets = targets(opcodes, operands);
+        int length = opcodes.length;
+        while (length > 0 && opcodes[length - 1] == Opcodes.NOP && !targets[length - 1] && !entries[length - 1]) {
+            length--;
+        }
+        if (length == opcodes.length) {
+            return new SamProgram(opcodes, operands, program.symbols, program.labels, program.source);
+        }
+        Map<String, Integer> labels = new HashMap<>();
+        for (Map.Entry<String, Integer> label : program.labels.entrySet()) {
+            if (label.getValue() < length) {
+                labels.put(label.getKey(), label.getValue());
+            }
+        }
+        return new SamProgram(Arrays.copyOf(opcodes, length), Arrays.copyOf(operands, length), program.symbols,
+                labels, program.source == null ? null : Arrays.copyOf(program.source, length));
+    }
+}
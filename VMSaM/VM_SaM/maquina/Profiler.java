@@ -0,0 +1,219 @@
+package maquina;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+//perfil de execução de um programa. Durante a execução só existe um contador
+//long por linha do programa; as contagens por opcode, por rótulo e por sub-rotina
+//são derivadas dele no relatório, já que o opcode de cada linha é fixo.
+public final class Profiler {
+    private static final String MAIN = "<main>";
+    private static final int TOP_LINES = 20;
+
+    final long[] pcCounts;
+    private final SamProgram program;
+
+    Profiler(SamProgram program) {
+        this.program = program;
+        this.pcCounts = new long[program.length()];
+    }
+
+    public long total() {
+        long total = 0;
+        for (long count : pcCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public long count(int line) {
+        return pcCounts[line];
+    }
+
+    //execuções por opcode, indexadas pelo código de Opcodes
+    public long[] byOpcode() {
+        long[] counts = new long[Opcodes.COUNT];
+        for (int pc = 0; pc < pcCounts.length; pc++) {
+            counts[program.opcodes[pc]] += pcCounts[pc];
+        }
+        return counts;
+    }
+
+    //execuções do trecho de cada rótulo até o rótulo seguinte
+    public Map<String, Long> byLabel() {
+        return attribute(labelStarts(false));
+    }
+
+    //execuções por sub-rotina: as entradas são os destinos de JSR e os rótulos
+    //seguidos de LINK; o código antes da primeira entrada conta como <main>
+    public Map<String, Long> bySubroutine() {
+        return attribute(labelStarts(true));
+    }
+
+    //rótulo que começa em cada linha (só entradas de sub-rotina se subroutines)
+    private String[] labelStarts(boolean subroutines) {
+        boolean[] entries = new boolean[program.length()];
+        if (subroutines) {
+            for (int pc = 0; pc < program.length(); pc++) {
+                if (program.opcodes[pc] == Opcodes.JSR) {
+                    entries[program.operands[pc]] = true;
+                }
+            }
+        }
+        String[] starts = new String[program.length()];
+        for (Map.Entry<String, Integer> label : program.labels.entrySet()) {
+            int line = label.getValue();
+            if (!subroutines || entries[line] || followedByLink(line)) {
+                starts[line] = label.getKey();
+            }
+        }
+        return starts;
+    }
+
+    private boolean followedByLink(int line) {
+        for (int pc = line + 1; pc < program.length(); pc++) {
+            if (program.opcodes[pc] != Opcodes.NOP) {
+                return program.opcodes[pc] == Opcodes.LINK;
+            }
+        }
+        return false;
+    }
+
+    private Map<String, Long> attribute(String[] starts) {
+        TreeMap<String, Long> counts = new TreeMap<>();
+        String current = MAIN;
+        for (int pc = 0; pc < pcCounts.length; pc++) {
+            if (starts[pc] != null) {
+                current = starts[pc];
+            }
+            if (pcCounts[pc] != 0) {
+                counts.merge(current, pcCounts[pc], Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    // ---- relatórios ----
+
+    public String textReport() {
+        long total = total();
+        StringBuilder out = new StringBuilder();
+        out.append("instructions executed: ").append(total).append('\n');
+
+        out.append(String.format(Locale.ROOT, "%n%-20s %14s %7s%n", "opcode", "count", "%"));
+        long[] opcodes = byOpcode();
+        for (int op : sortedIndexes(opcodes)) {
+            out.append(String.format(Locale.ROOT, "%-20s %14d %7.2f%n",
+                    Opcodes.mnemonic(op), opcodes[op], percent(opcodes[op], total)));
+        }
+
+        out.append(String.format(Locale.ROOT, "%n%-6s %14s %7s  %s%n", "line", "count", "%", "instruction"));
+        int[] lines = sortedIndexes(pcCounts);
+        for (int i = 0; i < Math.min(TOP_LINES, lines.length); i++) {
+            int pc = lines[i];
+            out.append(String.format(Locale.ROOT, "%-6d %14d %7.2f  %s%n",
+                    pc + 1, pcCounts[pc], percent(pcCounts[pc], total), program.line(pc).trim()));
+        }
+
+        appendTable(out, "label", byLabel(), total);
+        appendTable(out, "subroutine", bySubroutine(), total);
+        return out.toString();
+    }
+
+    private static void appendTable(StringBuilder out, String title, Map<String, Long> counts, long total) {
+        out.append(String.format(Locale.ROOT, "%n%-20s %14s %7s%n", title, "count", "%"));
+        for (Map.Entry<String, Long> entry : sortedEntries(counts)) {
+            out.append(String.format(Locale.ROOT, "%-20s %14d %7.2f%n",
+                    entry.getKey(), entry.getValue(), percent(entry.getValue(), total)));
+        }
+    }
+
+    public String jsonReport() {
+        StringBuilder out = new StringBuilder();
+        out.append("{\n  \"total\": ").append(total()).append(",\n");
+
+        out.append("  \"opcodes\": [");
+        long[] opcodes = byOpcode();
+        String separator = "\n";
+        for (int op : sortedIndexes(opcodes)) {
+            out.append(separator).append("    {\"opcode\": ").append(quote(Opcodes.mnemonic(op)))
+                    .append(", \"count\": ").append(opcodes[op]).append('}');
+            separator = ",\n";
+        }
+        out.append("\n  ],\n");
+
+        out.append("  \"lines\": [");
+        separator = "\n";
+        for (int pc : sortedIndexes(pcCounts)) {
+            out.append(separator).append("    {\"line\": ").append(pc + 1)
+                    .append(", \"instruction\": ").append(quote(program.line(pc).trim()))
+                    .append(", \"count\": ").append(pcCounts[pc]).append('}');
+            separator = ",\n";
+        }
+        out.append("\n  ],\n");
+
+        appendJson(out, "labels", "label", byLabel());
+        out.append(",\n");
+        appendJson(out, "subroutines", "subroutine", bySubroutine());
+        out.append("\n}\n");
+        return out.toString();
+    }
+
+    private static void appendJson(StringBuilder out, String name, String key, Map<String, Long> counts) {
+        out.append("  ").append(quote(name)).append(": [");
+        String separator = "\n";
+        for (Map.Entry<String, Long> entry : sortedEntries(counts)) {
+            out.append(separator).append("    {").append(quote(key)).append(": ").append(quote(entry.getKey()))
+                    .append(", \"count\": ").append(entry.getValue()).append('}');
+            separator = ",\n";
+        }
+        out.append("\n  ]");
+    }
+
+    //índices com contagem diferente de zero, da maior para a menor contagem
+    private static int[] sortedIndexes(long[] counts) {
+        Integer[] indexes = new Integer[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            indexes[i] = i;
+        }
+        Arrays.sort(indexes, Comparator.comparingLong((Integer i) -> counts[i]).reversed());
+        return Arrays.stream(indexes).filter(i -> counts[i] != 0).mapToInt(Integer::intValue).toArray();
+    }
+
+    private static List<Map.Entry<String, Long>> sortedEntries(Map<String, Long> counts) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return entries;
+    }
+
+    private static double percent(long count, long total) {
+        return total == 0 ? 0.0 : 100.0 * count / total;
+    }
+
+    private static String quote(String text) {
+        StringBuilder out = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        return out.append('"').toString();
+    }
+}
@@ -0,0 +1,23 @@
+package maquina;
+
+//registradores da máquina em campos simples. Cada SamInterpreter é executado por
+//uma única thread, então não há motivo para AtomicInteger/AtomicBoolean; o
+//controle vindo de outra thread usa SamInterpreter.interrupt(). O ponteiro da
+//heap é o topo do Heap.
+public final class Registers {
+    int pc;       //contador de programa (o laço de despacho o mantém num local)
+    int fp;       //FBR: base do frame corrente
+    boolean halt; //HALT: ligado por STOP
+
+    public int pc() {
+        return pc;
+    }
+
+    public int fp() {
+        return fp;
+    }
+
+    public boolean halted() {
+        return halt;
+    }
+}
@@ -0,0 +1,205 @@
+package maquina;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+//formato binário de programas já montados, carregado por mapeamento em memória.
+//Todos os inteiros são big-endian:
+//
+//  cabeçalho   "SAMB", versão (u16), reservado (u16), instruções n (i32),
+//              rótulos (i32), símbolos (i32)
+//  código      n opcodes (u8), preenchimento até múltiplo de 4, n operandos (i32)
+//  rótulos     linha (i32), nome (u16 tamanho + UTF-8), em ordem de linha
+//  símbolos    nome (u16 tamanho + UTF-8), na ordem dos slots
+//  checksum    CRC32 (i32) de todos os bytes anteriores
+//
+//Os operandos já estão resolvidos (destinos de desvio e slots de variáveis), então
+//carregar é copiar as seções para os arrays do SamProgram. Os códigos de Opcodes
+//fazem parte do formato: mudá-los exige uma nova VERSION.
+public final class SamBinary {
+    public static final int MAGIC = 0x53414D42; //"SAMB"
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    private SamBinary() {
+    }
+
+    public static byte[] encode(SamProgram program) {
+        int n = program.length();
+        byte[][] labelNames = new byte[program.labels.size()][];
+        int[] labelLines = new int[labelNames.length];
+        int size = HEADER_SIZE + align(n) + 4 * n + 4;
+        int i = 0;
+        for (Map.Entry<String, Integer> label : program.labels.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue()).toList()) {
+            labelNames[i] = name(label.getKey());
+            labelLines[i] = label.getValue();
+            size += 4 + 2 + labelNames[i].length;
+            i++;
+        }
+        byte[][] symbolNames = new byte[program.symbols.length][];
+        for (i = 0; i < symbolNames.length; i++) {
+            symbolNames[i] = name(program.symbols[i]);
+            size += 2 + symbolNames[i].length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
+        out.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0)
+                .putInt(n).putInt(labelNames.length).putInt(symbolNames.length);
+        for (int pc = 0; pc < n; pc++) {
+            out.put((byte) program.opcodes[pc]);
+        }
+        out.position(HEADER_SIZE + align(n));
+        out.asIntBuffer().put(program.operands);
+        out.position(out.position() + 4 * n);
+        for (i = 0; i < labelNames.length; i++) {
+            out.putInt(labelLines[i]).putShort((short) labelNames[i].length).put(labelNames[i]);
+        }
+        for (byte[] symbol : symbolNames) {
+            out.putShort((short) symbol.length).put(symbol);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+        return out.array();
+    }
+
+    public static void write(SamProgram program, Path file) throws IOException {
+        Files.write(file, encode(program));
+    }
+
+    //mapeia o arquivo e monta o SamProgram; o arquivo não é lido linha a linha
+    public static SamProgram load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static boolean isBinary(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) > 0) {
+                //lê os quatro primeiros bytes
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    public static SamProgram decode(ByteBuffer in) {
+        in = in.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int size = in.remaining();
+        if (size < HEADER_SIZE + 4 || in.getInt(0) != MAGIC) {
+            throw new RuntimeException("Not a SaM binary program");
+        }
+        int version = in.getShort(4) & 0xffff;
+        if (version != VERSION) {
+            throw new RuntimeException("Unsupported SaM binary version: " + version + " (expected " + VERSION + ")");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(in.duplicate().limit(size - 4));
+        if ((int) crc.getValue() != in.getInt(size - 4)) {
+            throw new RuntimeException("Corrupted SaM binary program: checksum mismatch");
+        }
+
+        int n = in.getInt(8);
+        int labelCount = in.getInt(12);
+        int symbolCount = in.getInt(16);
+        if (n < 0 || labelCount < 0 || symbolCount < 0
+                || (long) HEADER_SIZE + align(n) + 4L * n + 4 > size) {
+            throw new RuntimeException("Corrupted SaM binary program: invalid section sizes");
+        }
+        int[] opcodes = new int[n];
+        int[] operands = new int[n];
+        in.position(HEADER_SIZE);
+        for (int pc = 0; pc < n; pc++) {
+            opcodes[pc] = in.get() & 0xff;
+        }
+        in.position(HEADER_SIZE + align(n));
+        in.asIntBuffer().get(operands);
+        in.position(in.position() + 4 * n);
+
+        HashMap<String, Integer> labels = new HashMap<>(Math.max(16, labelCount * 2));
+        for (int i = 0; i < labelCount; i++) {
+            int line = in.getInt();
+            if (line < 0 || line >= n) {
+                throw new RuntimeException("Invalid label line in SaM binary: " + line);
+            }
+            labels.put(name(in), line);
+        }
+        String[] symbols = new String[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            symbols[i] = name(in);
+        }
+        if (in.position() != size - 4) {
+            throw new RuntimeException("Corrupted SaM binary program: invalid section sizes");
+        }
+        validate(opcodes, operands, symbolCount);
+        return new SamProgram(opcodes, operands, symbols, labels, null);
+    }
+
+    //o interpretador confia nos operandos resolvidos, então eles são conferidos na carga
+    private static void validate(int[] opcodes, int[] operands, int symbolCount) {
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            int op = opcodes[pc];
+            if (op >= Opcodes.COUNT || Opcodes.mnemonic(op) == null) {
+                throw new RuntimeException("Invalid opcode in SaM binary at line " + (pc + 1) + ": " + op);
+            }
+            if (pc + Opcodes.width(op) > opcodes.length) {
+                throw new RuntimeException("Truncated superinstruction in SaM binary at line " + (pc + 1));
+            }
+            int kind = Opcodes.operandKind(op);
+            if (kind == Opcodes.LABEL_OPERAND && (operands[pc] < 0 || operands[pc] >= opcodes.length)) {
+                throw new RuntimeException("Invalid jump target in SaM binary at line " + (pc + 1) + ": " + operands[pc]);
+            }
+            if (kind == Opcodes.VAR_OPERAND && (operands[pc] < 0 || operands[pc] >= symbolCount)) {
+                throw new RuntimeException("Invalid variable slot in SaM binary at line " + (pc + 1) + ": " + operands[pc]);
+            }
+        }
+    }
+
+    private static int align(int n) {
+        return (n + 3) & ~3;
+    }
+
+    private static byte[] name(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff) {
+            throw new RuntimeException("Name too long for SaM binary: " + name.substring(0, 32) + "...");
+        }
+        return bytes;
+    }
+
+    private static String name(ByteBuffer in) {
+        int length = in.getShort() & 0xffff;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //monta um programa texto e grava o binário: SamBinary [--fuse] entrada.txt saida.samb
+    public static void main(String[] args) throws IOException {
+        boolean fuse = args.length > 0 && args[0].equals("--fuse");
+        int first = fuse ? 1 : 0;
+        if (args.length - first != 2) {
+            System.err.println("Uso: SamBinary [--fuse] programa.txt programa.samb");
+            System.exit(2);
+        }
+        List<String> lines = Files.readAllLines(Paths.get(args[first]));
+        SamProgram program = new Assembler().assemble(lines.toArray(new String[0]));
+        if (fuse) {
+            program = new Fuser().fuse(program);
+        }
+        write(program, Paths.get(args[first + 1]));
+    }
+}
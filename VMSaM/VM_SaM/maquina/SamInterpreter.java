@@ -1,68 +1,1381 @@
 package maquina; 
 
-import java.util.HashMap;
-import java.util.Scanner;
-import java.util.Stack;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 
 public class SamInterpreter {
-    //scanner para instruções de READ
-    private static final Scanner scanner = new Scanner(System.in);
     // Pilha de operações
-    private final Stack<Integer> stack;
+    final OperandStack stack;
     
-    // Tabela de símbolos (variáveis)
-    private HashMap<String, Integer> symbolTable;
+    // Variáveis globais, indexadas pelo slot resolvido pelo Assembler
+    final int[] globals;
     
-    // Programa (lista de instruções)
-    private String[] program;
+    // Programa já montado (opcodes e operandos decodificados)
+    final SamProgram program;
     
-    // Contador de programa
-    AtomicInteger pc = new AtomicInteger(0);
+    // Registradores PC, FBR e HALT
+    final Registers registers = new Registers();
 
-    AtomicInteger heapPointer = new AtomicInteger(0); // Aponta para o próximo endereço livre na heap
-    private Integer[] heapMemory; // Registra alocações (endereço -> tamanho)
-    AtomicInteger framePointer = new AtomicInteger(0); //funciona como o FBR da maquina
-     AtomicBoolean halt = new AtomicBoolean(false); //registrador HALT
+    final Heap heap; // Alocador da heap (MALLOC/FREE)
+
+    // Pedido de parada vindo de outra thread; só é consultado em desvios para trás
+    private volatile boolean interruptRequested;
+
+    // Instruções que ainda restam na fatia de executeSlice; também só é consultado
+    // em desvios para trás. Fora de uma fatia fica em Long.MAX_VALUE
+    long sliceBudget = Long.MAX_VALUE;
+
+    // JIT em camadas: contadores por destino de desvio para trás e entrada de JSR
+    private JitCompiler jit;
+    private int jitThreshold;
+    private int[] hotness;
+    private CompiledRegion[] compiled;
+
+    // Perfil por linha, ligado por enableProfiling
+    private Profiler profiler;
+
+    // Amostragem da pilha de chamadas SaM, ligada por enableCallSampling
+    private CallStackSampler sampler;
+
+    // Verificação da altura da pilha, ligada por enableVerifiedMode
+    private StackVerifier verifier;
+
+    // Pilha de endereços de retorno e caches de desvios calculados, ligados por enableCallStack
+    CallStack calls;
+
+    // Topo da pilha em variáveis locais (runCached), ligado por enableTopOfStackCache
+    private boolean topOfStackCache;
+
+    // Blocos traduzidos em nós (runClosures), ligados por enableClosureCompilation
+    private boolean closureEngine;
+    private ClosureCompiler closures;
+
+    // Instruções executadas pelo interpretador (uma superinstrução conta as que substituiu)
+    private long instructionCount;
     
     public SamInterpreter(String[] program, int heapSize) {
-        this.stack = new Stack<>();
-        this.symbolTable = new HashMap<>();
+        this(new Assembler().assemble(program), heapSize);
+    }
+
+    public SamInterpreter(SamProgram program, int heapSize) {
+        this(program, heapSize, OperandStack.DEFAULT_MAX_DEPTH);
+    }
+
+    public SamInterpreter(SamProgram program, int heapSize, int maxStackDepth) {
+        this(program, new Heap(heapSize), maxStackDepth);
+    }
+
+    //máquina sobre uma heap já em uso (LockstepRunner continua uma lane aqui)
+    SamInterpreter(SamProgram program, Heap heap, int maxStackDepth) {
+        this.stack = new OperandStack(OperandStack.DEFAULT_CAPACITY, maxStackDepth);
         this.program = program;
-        this.heapMemory = new Integer[heapSize];
+        this.globals = new int[program.symbols.length];
+        this.heap = heap;
     }
     
+    public Registers registers() {
+        return registers;
+    }
+
+    //pede, de qualquer thread, que a execução pare no próximo desvio para trás;
+    //o pc fica salvo nos registradores e execute pode ser chamado de novo depois de clearInterrupt
+    public void interrupt() {
+        interruptRequested = true;
+    }
+
+    public boolean isInterrupted() {
+        return interruptRequested;
+    }
+
+    public void clearInterrupt() {
+        interruptRequested = false;
+    }
+
+    //instruções executadas pelo interpretador; as de regiões compiladas pelo JIT não entram
+    public long instructionCount() {
+        return instructionCount;
+    }
+
+    public OperandStack stack() {
+        return stack;
+    }
+
+    public Heap heap() {
+        return heap;
+    }
+
+    //liga a contagem de execuções por linha; as contagens se acumulam entre chamadas de execute
+    public Profiler enableProfiling() {
+        if (profiler == null) {
+            profiler = new Profiler(program);
+        }
+        return profiler;
+    }
+
+    public Profiler profiler() {
+        return profiler;
+    }
+
+    //liga a amostragem da pilha de chamadas a cada interval instruções
+    public CallStackSampler enableCallSampling(int interval) {
+        if (sampler == null) {
+            sampler = new CallStackSampler(program, interval);
+        }
+        return sampler;
+    }
+
+    public CallStackSampler callSampler() {
+        return sampler;
+    }
+
+    //liga a compilação para bytecode JVM das regiões executadas threshold vezes
+    public void enableJit(int threshold) {
+        this.jit = new JitCompiler();
+        this.jitThreshold = threshold;
+        this.hotness = new int[program.length()];
+        this.compiled = new CompiledRegion[program.length()];
+    }
+
+    //verifica a altura da pilha do programa e passa a executar as linhas verificadas
+    //sem os testes de pilha vazia. Com strict, rejeita o programa se alguma linha
+    //alcançável puder encontrar a pilha com menos valores do que consome; sem strict,
+    //essas linhas só continuam com as verificações. O modo não se combina com
+    //perfil, amostragem e JIT: com eles a execução continua toda verificada
+    public StackVerifier enableVerifiedMode(boolean strict) {
+        StackVerifier result = StackVerifier.verify(program);
+        if (strict && !result.isVerified()) {
+            throw new RuntimeException(String.join("\n", result.problems()));
+        }
+        verifier = result;
+        return result;
+    }
+
+    public StackVerifier verifier() {
+        return verifier;
+    }
+
+    //liga o modo de chamadas: JSR e JSRIND registram o retorno numa pilha própria
+    //limitada a maxDepth chamadas, JUMPIND que volta para uma chamada ativa não
+    //testa o destino e os demais desvios calculados passam por um cache por linha.
+    //A pilha de operandos continua recebendo os endereços de retorno
+    public CallStack enableCallStack(int maxDepth) {
+        if (calls == null) {
+            calls = new CallStack(program.length(), maxDepth);
+        }
+        return calls;
+    }
+
+    public CallStack callStack() {
+        return calls;
+    }
+
+    //executa com os dois valores do topo da pilha em variáveis locais, descarregados
+    //no array só quando a instrução precisa da pilha inteira. Como o modo verificado,
+    //não se combina com perfil, amostragem e JIT; com eles, ou com o modo
+    //verificado, a execução usa os laços de sempre
+    public void enableTopOfStackCache() {
+        topOfStackCache = true;
+    }
+
+    //executa cada bloco básico como uma sequência de nós montada na primeira vez
+    //que o bloco é alcançado (ClosureCompiler). Também não se combina com perfil,
+    //amostragem, JIT e modo verificado, e tem preferência sobre enableTopOfStackCache
+    public void enableClosureCompilation() {
+        closureEngine = true;
+    }
+
     public void execute(IO io, Arithmetic_Logic al, RegisterManip rm, StackManip sm, Control con) {
-        while (pc.get() < program.length && !halt.get()) {
-            String instruction = program[pc.get()].trim();
-            if(instruction.endsWith(":")){
-               pc.set(pc.get() + 1);
-               continue;
+        //a saída com buffer é entregue quando a máquina para: STOP, fim do programa ou erro
+        try {
+            run(io, al, rm, sm, con);
+        } finally {
+            io.flush();
+        }
+    }
+
+    //como execute, mas devolve o controle no primeiro desvio para trás depois de
+    //quantum instruções (nas regiões do JIT cada passagem por uma junção conta como
+    //uma). Devolve true se a máquina parou só por causa da fatia e pode continuar
+    public boolean executeSlice(IO io, Arithmetic_Logic al, RegisterManip rm, StackManip sm, Control con,
+                                long quantum) {
+        sliceBudget = Math.max(quantum, 1);
+        try {
+            execute(io, al, rm, sm, con);
+            return sliceBudget <= 0 && !registers.halt && registers.pc >= 0 && registers.pc < program.length();
+        } finally {
+            sliceBudget = Long.MAX_VALUE;
+        }
+    }
+
+    private void run(IO io, Arithmetic_Logic al, RegisterManip rm, StackManip sm, Control con) {
+        if (closureEngine && verifier == null && profiler == null && sampler == null && jit == null) {
+            runClosures(io, al, rm, sm, con);
+            return;
+        }
+        if (topOfStackCache && verifier == null && profiler == null && sampler == null && jit == null) {
+            runCached(io, al, rm, sm, con);
+            return;
+        }
+        if (verifier == null || profiler != null || sampler != null || jit != null) {
+            runChecked(io, al, rm, sm, con, null);
+            return;
+        }
+        //alterna entre os dois laços: o rápido vale enquanto a pilha tiver ao menos
+        //a altura mínima que a análise calculou para a linha corrente
+        int pc = registers.pc;
+        boolean fast = pc >= 0 && pc < program.length() && stack.size() >= verifier.minDepth[pc];
+        while (fast ? runVerified(io, al, rm, sm, con) : runChecked(io, al, rm, sm, con, verifier.minDepth)) {
+            fast = !fast;
+        }
+    }
+
+    //laço com todas as verificações; com minDepth, devolve true ao chegar por desvio
+    //numa linha em que o laço verificado pode continuar
+    private boolean runChecked(IO io, Arithmetic_Logic al, RegisterManip rm, StackManip sm, Control con,
+                               int[] minDepth) {
+        int[] opcodes = program.opcodes;
+        int[] operands = program.operands;
+        int length = opcodes.length;
+        //com o perfil ligado as regiões compiladas não são usadas, para que toda
+        //instrução passe pelos contadores
+        long[] pcCounts = profiler == null ? null : profiler.pcCounts;
+        CallStackSampler sampler = this.sampler;
+        boolean tiered = jit != null && pcCounts == null && sampler == null;
+        CallStack calls = this.calls;
+        //o pc fica num local durante o laço e volta para os registradores ao sair
+        Registers regs = registers;
+        int pc = regs.pc;
+        long executed = 0;
+        try {
+            //um único despacho por instrução: cada opcode vai direto para sua implementação
+            while (pc < length && !regs.halt) {
+                int current = pc;
+                executed++;
+                if (pcCounts != null) {
+                    pcCounts[current]++;
+                }
+                int operand = operands[current];
+                int next = current + 1;
+                int op = opcodes[current];
+                switch (op) {
+                    case Opcodes.NOP -> { }
+                    case Opcodes.PUSH -> sm.push(stack, operand);
+                    case Opcodes.POP -> sm.pop(stack);
+                    case Opcodes.STORE -> sm.store(stack, globals, operand);
+                    case Opcodes.LOAD -> sm.load(stack, globals, operand);
+                    case Opcodes.DUP -> sm.dup(stack);
+                    case Opcodes.SWAP -> sm.swap(stack);
+                    case Opcodes.MALLOC -> sm.malloc(stack, heap);
+                    case Opcodes.FREE -> sm.free(stack, heap);
+                    case Opcodes.PUSHIND -> sm.pushind(stack);
+                    case Opcodes.STOREIND -> sm.storeind(stack);
+                    case Opcodes.ADDSP -> sm.addsp(stack, operand);
+                    case Opcodes.PUSHOFF -> sm.pushoff(stack, regs, operand);
+                    case Opcodes.STOREOFF -> sm.storeoff(stack, regs, operand);
+                    case Opcodes.PUSHSP -> rm.pushsp(stack);
+                    case Opcodes.POPSP -> rm.popsp(stack);
+                    case Opcodes.PUSHFBR -> rm.pushfbr(stack, regs);
+                    case Opcodes.POPFBR -> rm.popfbr(stack, regs);
+                    case Opcodes.LINK -> rm.link(stack, regs);
+                    case Opcodes.STOP -> rm.stop(regs);
+                    case Opcodes.ADD -> al.add(stack);
+                    case Opcodes.SUB -> al.sub(stack);
+                    case Opcodes.TIMES -> al.times(stack);
+                    case Opcodes.DIV -> al.div(stack);
+                    case Opcodes.MOD -> al.mod(stack);
+                    case Opcodes.LSHIFT -> al.lshift(stack, operand);
+                    case Opcodes.RSHIFT -> al.rshift(stack, operand);
+                    case Opcodes.NOT -> al.not(stack);
+                    case Opcodes.OR -> al.or(stack);
+                    case Opcodes.AND -> al.and(stack);
+                    case Opcodes.XOR -> al.xor(stack);
+                    case Opcodes.NAND -> al.nand(stack);
+                    case Opcodes.BITNOT -> al.bitnot(stack);
+                    case Opcodes.BITAND -> al.bitand(stack);
+                    case Opcodes.BITOR -> al.bitor(stack);
+                    case Opcodes.BITXOR -> al.bitxor(stack);
+                    case Opcodes.BITNAND -> al.bitnand(stack);
+                    case Opcodes.GREATER -> al.greater(stack);
+                    case Opcodes.LESS -> al.less(stack);
+                    case Opcodes.EQUAL -> al.equal(stack);
+                    case Opcodes.ISNIL -> al.isnil(stack);
+                    case Opcodes.ISPOS -> al.ispos(stack);
+                    case Opcodes.ISNEG -> al.isneg(stack);
+                    case Opcodes.CMP -> al.cmp(stack);
+                    case Opcodes.PRINT -> io.print(stack);
+                    case Opcodes.READ -> io.read(stack);
+                    case Opcodes.READC -> io.readc(stack);
+                    case Opcodes.READF -> io.readf(stack);
+                    case Opcodes.PRINTLN -> io.println(stack);
+                    case Opcodes.PRINTC -> io.printc(stack);
+                    case Opcodes.DUMP -> io.dump(stack);
+                    case Opcodes.JUMP -> next = con.jump(operand);
+                    case Opcodes.JUMPC -> next = con.jumpc(stack, operand, current);
+                    case Opcodes.JUMPIND -> next = calls == null
+                            ? con.jumpind(stack, length) : calls.jumpind(stack, current, length);
+                    case Opcodes.JSR -> next = calls == null
+                            ? con.jsr(stack, operand, current) : calls.jsr(stack, operand, current);
+                    case Opcodes.JSRIND -> next = calls == null
+                            ? con.jsrind(stack, current, length) : calls.jsrind(stack, current, length);
+                    case Opcodes.SKIP -> next = con.skip(stack, current);
+                    case Opcodes.INCOFF -> {
+                        sm.incoff(stack, regs, operand, operands[current + 1]);
+                        next = current + 4;
+                        executed += 3;
+                    }
+                    case Opcodes.DUP_STOREOFF -> {
+                        sm.dupStoreoff(stack, regs, operand);
+                        next = current + 2;
+                        executed += 1;
+                    }
+                    case Opcodes.PUSH_LESS_JUMPC -> {
+                        next = con.pushLessJumpc(stack, operand, operands[current + 2], current + 3);
+                        executed += 2;
+                    }
+                    case Opcodes.PUSH_GREATER_JUMPC -> {
+                        next = con.pushGreaterJumpc(stack, operand, operands[current + 2], current + 3);
+                        executed += 2;
+                    }
+                    case Opcodes.PUSH_EQUAL_JUMPC -> {
+                        next = con.pushEqualJumpc(stack, operand, operands[current + 2], current + 3);
+                        executed += 2;
+                    }
+                    default -> throw new IllegalStateException("Invalid opcode at line " + (current + 1));
+                }
+                if (sampler != null) {
+                    sampler.step(op, current, next);
+                }
+                //todo laço passa por um desvio para trás, então basta verificar a interrupção
+                //e o fim da fatia ali
+                if (next <= current && (interruptRequested || executed >= sliceBudget)) {
+                    pc = next;
+                    return false;
+                }
+                if (tiered && (next <= current || op == Opcodes.JSR) && next >= 0 && next < length) {
+                    next = enterCompiled(next);
+                }
+                pc = next;
+                if (minDepth != null && next != current + 1 && next >= 0 && next < length
+                        && stack.size() >= minDepth[next]) {
+                    return true;
+                }
+            }
+        } finally {
+            regs.pc = pc;
+            instructionCount += executed;
+            sliceBudget -= executed;
+        }
+        return false;
+    }
+
+    //laço sem testes de pilha vazia, para programas aceitos pelo StackVerifier. As
+    //linhas que a análise não garante (CHECKED) e os destinos calculados que chegam
+    //com a pilha abaixo de minDepth devolvem true, passando para runChecked
+    private boolean runVerified(IO io, Arithmetic_Logic al, RegisterManip rm, StackManip sm, Control con) {
+        int[] opcodes = verifier.fastOpcodes;
+        int[] minDepth = verifier.minDepth;
+        int[] operands = program.operands;
+        CallStack calls = this.calls;
+        int length = opcodes.length;
+        OperandStack s = stack;
+        Registers regs = registers;
+        int pc = regs.pc;
+        long executed = 0;
+        try {
+            while (pc < length && !regs.halt) {
+                int current = pc;
+                executed++;
+                int operand = operands[current];
+                int next = current + 1;
+                boolean computed = false; //destino calculado: confere a altura na chegada
+                switch (opcodes[current]) {
+                    case Opcodes.NOP -> { }
+                    case Opcodes.PUSH -> s.push(operand);
+                    case Opcodes.POP -> s.dropUnchecked(1);
+                    case Opcodes.STORE -> globals[operand] = s.popUnchecked();
+                    case Opcodes.LOAD -> s.push(globals[operand]);
+                    case Opcodes.DUP -> s.push(s.peekUnchecked());
+                    case Opcodes.SWAP -> { } //como StackManip.swap, a pilha não muda
+                    //como StackManip.malloc, o tamanho sai da pilha mesmo se o alocador falhar
+                    case Opcodes.MALLOC -> s.push(heap.malloc(s.popUnchecked()));
+                    case Opcodes.FREE -> heap.free(s.popUnchecked());
+                    case Opcodes.PUSHIND -> {
+                        int address = s.popUnchecked();
+                        int position = s.size() - 1 - address;
+                        if (position < 0 || address >= s.size()) {
+                            throw new RuntimeException("Invalid memory address in PUSHIND: " + address);
+                        }
+                        s.push(s.get(position));
+                    }
+                    case Opcodes.STOREIND -> {
+                        int value = s.popUnchecked();
+                        int m = s.popUnchecked();
+                        int position = s.size() - 1 - m;
+                        if (position < 0 || position >= s.size()) {
+                            throw new RuntimeException("Invalid stack index in STOREIND: " + m);
+                        }
+                        s.set(position, value);
+                    }
+                    case Opcodes.ADDSP -> {
+                        if (operand < 0) {
+                            s.dropUnchecked(-operand);
+                        } else {
+                            s.pushZeros(operand);
+                        }
+                    }
+                    case Opcodes.PUSHOFF -> sm.pushoff(s, regs, operand);
+                    case Opcodes.STOREOFF -> sm.storeoff(s, regs, operand);
+                    case Opcodes.PUSHSP -> s.push(s.size());
+                    case Opcodes.POPSP -> rm.popsp(s);
+                    case Opcodes.PUSHFBR -> s.push(regs.fp);
+                    case Opcodes.POPFBR -> regs.fp = s.popUnchecked();
+                    case Opcodes.LINK -> rm.link(s, regs);
+                    case Opcodes.STOP -> rm.stop(regs);
+                    case Opcodes.ADD -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(a + s.peekUnchecked());
+                    }
+                    case Opcodes.SUB -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(s.peekUnchecked() - a);
+                    }
+                    case Opcodes.TIMES -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(a * s.peekUnchecked());
+                    }
+                    //os dois operandos saem antes da divisão: na divisão por zero a pilha
+                    //fica como em Arithmetic_Logic.div e mod
+                    case Opcodes.DIV -> {
+                        int a = s.popUnchecked();
+                        s.push(s.popUnchecked() / a);
+                    }
+                    case Opcodes.MOD -> {
+                        int a = s.popUnchecked();
+                        s.push(s.popUnchecked() % a);
+                    }
+                    case Opcodes.LSHIFT -> s.setTopUnchecked(s.peekUnchecked() << operand);
+                    case Opcodes.RSHIFT -> s.setTopUnchecked(s.peekUnchecked() >> operand);
+                    case Opcodes.NOT, Opcodes.ISNIL -> s.setTopUnchecked(s.peekUnchecked() == 0 ? 1 : 0);
+                    case Opcodes.OR, Opcodes.AND -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(a != 0 && s.peekUnchecked() != 0 ? 1 : 0);
+                    }
+                    case Opcodes.XOR -> {
+                        boolean a = s.popUnchecked() != 0;
+                        s.setTopUnchecked(a != (s.peekUnchecked() != 0) ? 1 : 0);
+                    }
+                    case Opcodes.NAND -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(a != 0 && s.peekUnchecked() != 0 ? 0 : 1);
+                    }
+                    case Opcodes.BITNOT -> s.setTopUnchecked(~s.peekUnchecked());
+                    case Opcodes.BITAND -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(a & s.peekUnchecked());
+                    }
+                    case Opcodes.BITOR -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(a | s.peekUnchecked());
+                    }
+                    case Opcodes.BITXOR -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(a ^ s.peekUnchecked());
+                    }
+                    case Opcodes.BITNAND -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(~(a & s.peekUnchecked()));
+                    }
+                    case Opcodes.GREATER -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(s.peekUnchecked() > a ? 1 : 0);
+                    }
+                    case Opcodes.LESS -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(s.peekUnchecked() < a ? 1 : 0);
+                    }
+                    case Opcodes.EQUAL -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(s.peekUnchecked() == a ? 1 : 0);
+                    }
+                    case Opcodes.ISPOS -> s.setTopUnchecked(s.peekUnchecked() > 0 ? 1 : 0);
+                    case Opcodes.ISNEG -> s.setTopUnchecked(s.peekUnchecked() < 0 ? 1 : 0);
+                    case Opcodes.CMP -> {
+                        int a = s.popUnchecked();
+                        s.setTopUnchecked(Integer.compare(s.peekUnchecked(), a));
+                    }
+                    case Opcodes.PRINT -> io.print(s);
+                    case Opcodes.READ -> io.read(s);
+                    case Opcodes.READC -> io.readc(s);
+                    case Opcodes.READF -> io.readf(s);
+                    case Opcodes.PRINTLN -> io.println(s);
+                    case Opcodes.PRINTC -> io.printc(s);
+                    case Opcodes.DUMP -> io.dump(s);
+                    case Opcodes.JUMP -> next = operand;
+                    case Opcodes.JUMPC -> {
+                        if (s.popUnchecked() != 0) {
+                            next = operand;
+                        }
+                    }
+                    case Opcodes.JUMPIND -> {
+                        if (calls != null) {
+                            next = calls.jumpind(s, current, length);
+                        } else {
+                            next = s.popUnchecked();
+                            if (next < 0 || next >= length) {
+                                throw new RuntimeException("Invalid jump target in JUMPIND: " + next);
+                            }
+                        }
+                        computed = true;
+                    }
+                    case Opcodes.JSR -> {
+                        s.push(next);
+                        if (calls != null) {
+                            calls.call(next);
+                        }
+                        next = operand;
+                    }
+                    case Opcodes.JSRIND -> {
+                        if (calls != null) {
+                            next = calls.jsrind(s, current, length);
+                        } else {
+                            int target = s.peekUnchecked();
+                            s.setTopUnchecked(next);
+                            if (target < 0 || target >= length) {
+                                throw new RuntimeException("Invalid jump target in JSRIND: " + target);
+                            }
+                            next = target;
+                        }
+                        computed = true;
+                    }
+                    case Opcodes.SKIP -> {
+                        next = current + s.popUnchecked() + 1;
+                        computed = true;
+                    }
+                    case Opcodes.INCOFF -> {
+                        sm.incoff(s, regs, operand, operands[current + 1]);
+                        next = current + 4;
+                        executed += 3;
+                    }
+                    case Opcodes.DUP_STOREOFF -> {
+                        sm.dupStoreoff(s, regs, operand);
+                        next = current + 2;
+                        executed += 1;
+                    }
+                    case Opcodes.PUSH_LESS_JUMPC -> {
+                        next = s.popUnchecked() < operand ? operands[current + 2] : current + 3;
+                        executed += 2;
+                    }
+                    case Opcodes.PUSH_GREATER_JUMPC -> {
+                        next = s.popUnchecked() > operand ? operands[current + 2] : current + 3;
+                        executed += 2;
+                    }
+                    case Opcodes.PUSH_EQUAL_JUMPC -> {
+                        next = s.popUnchecked() == operand ? operands[current + 2] : current + 3;
+                        executed += 2;
+                    }
+                    //StackVerifier.CHECKED: a linha é executada pelo laço verificado
+                    default -> {
+                        executed--;
+                        return true;
+                    }
+                }
+                if (next <= current && (interruptRequested || executed >= sliceBudget)) {
+                    pc = next;
+                    return false;
+                }
+                pc = next;
+                if (computed && (next < 0 || next >= length || s.size() < minDepth[next])) {
+                    return true;
+                }
+            }
+        } finally {
+            regs.pc = pc;
+            instructionCount += executed;
+            sliceBudget -= executed;
+        }
+        return false;
+    }
+
+    //laço por blocos: executa os nós do bloco em sequência e segue pela saída. Só
+    //os desvios para trás são pontos de interrupção, como em runChecked; num erro o
+    //pc e a contagem de instruções voltam para a linha do nó que falhou
+    private void runClosures(IO io, Arithmetic_Logic al, RegisterManip rm, StackManip sm, Control con) {
+        if (closures == null || !closures.boundTo(io, al, rm, sm, con, calls)) {
+            closures = new ClosureCompiler(this, io, al, rm, sm, con);
+        }
+        ClosureCompiler compiler = closures;
+        int length = program.length();
+        Registers regs = registers;
+        int pc = regs.pc;
+        long executed = 0;
+        ClosureCompiler.Block block = null;
+        int index = 0;
+        try {
+            while (pc < length && !regs.halt) {
+                block = null;
+                block = compiler.block(pc);
+                ClosureCompiler.Node[] body = block.body;
+                for (index = 0; index < body.length; index++) {
+                    body[index].exec();
+                }
+                int next = block.exit == null ? block.end : block.exit.exec();
+                executed += block.count;
+                if (next <= block.lines[index] && (interruptRequested || executed >= sliceBudget)) {
+                    pc = next;
+                    return;
+                }
+                pc = next;
+            }
+        } catch (RuntimeException | Error e) {
+            if (block == null) {
+                executed++; //pc fora do programa, como o acesso ao opcode em runChecked
+            } else {
+                pc = block.lines[index];
+                executed += block.before[index] + 1;
             }
-            sm.stackMan(instruction, stack, symbolTable, heapPointer, heapMemory, framePointer);
-            rm.regMan(instruction, stack, halt, framePointer);
-            al.ariLog(instruction, stack);
-            io.inputOutput(instruction, stack, scanner);
-            con.control(instruction, stack, program, pc);
-            pc.set(pc.get() + 1);
+            throw e;
+        } finally {
+            regs.pc = pc;
+            instructionCount += executed;
+            sliceBudget -= executed;
         }
     }
+
+    //laço com o topo da pilha em locais: até dois valores (t0 é o topo, t1 o
+    //anterior) ficam fora do array entre os despachos, e a pilha lógica é o array
+    //seguido deles. Instruções que olham a pilha inteira (PUSHIND, STOREIND, DUMP,
+    //PUSHSP, POPSP, LINK, ADDSP maior que 1, chamadas, I/O, alocador) descarregam
+    //os locais no array e usam a mesma implementação de runChecked, assim como os
+    //casos de erro, então erros e o estado da pilha depois deles são os mesmos
+    private void runCached(IO io, Arithmetic_Logic al, RegisterManip rm, StackManip sm, Control con) {
+        int[] opcodes = program.opcodes;
+        int[] operands = program.operands;
+        int length = opcodes.length;
+        CallStack calls = this.calls;
+        OperandStack s = stack;
+        int limit = s.maxDepth();
+        Registers regs = registers;
+        int pc = regs.pc;
+        long executed = 0;
+        int cached = 0; //quantos valores do topo estão em t0 e t1
+        int t0 = 0;
+        int t1 = 0;
+        try {
+            while (pc < length && !regs.halt) {
+                int current = pc;
+                executed++;
+                int operand = operands[current];
+                int next = current + 1;
+                switch (opcodes[current]) {
+                    case Opcodes.NOP -> { }
+                    case Opcodes.PUSH -> {
+                        if (s.size() + cached == limit) {
+                            throw OperandStack.overflow(limit);
+                        }
+                        if (cached == 2) {
+                            s.push(t1);
+                        } else {
+                            cached++;
+                        }
+                        t1 = t0;
+                        t0 = operand;
+                    }
+                    case Opcodes.POP -> {
+                        if (cached > 0) {
+                            t0 = t1;
+                            cached--;
+                        } else {
+                            sm.pop(s);
+                        }
+                    }
+                    case Opcodes.STORE -> {
+                        if (cached > 0) {
+                            globals[operand] = t0;
+                            t0 = t1;
+                            cached--;
+                        } else {
+                            sm.store(s, globals, operand);
+                        }
+                    }
+                    case Opcodes.LOAD -> {
+                        if (s.size() + cached == limit) {
+                            throw OperandStack.overflow(limit);
+                        }
+                        if (cached == 2) {
+                            s.push(t1);
+                        } else {
+                            cached++;
+                        }
+                        t1 = t0;
+                        t0 = globals[operand];
+                    }
+                    case Opcodes.DUP -> {
+                        if (cached == 0) {
+                            sm.dup(s);
+                        } else {
+                            if (s.size() + cached == limit) {
+                                throw OperandStack.overflow(limit);
+                            }
+                            if (cached == 2) {
+                                s.push(t1);
+                            } else {
+                                cached++;
+                            }
+                            t1 = t0;
+                        }
+                    }
+                    case Opcodes.SWAP -> {
+                        //como StackManip.swap, a pilha não muda; só falta o erro com menos de dois valores
+                        if (s.size() + cached < 2) {
+                            cached = spill(s, cached, t1, t0);
+                            sm.swap(s);
+                        }
+                    }
+                    case Opcodes.MALLOC -> {
+                        cached = spill(s, cached, t1, t0);
+                        sm.malloc(s, heap);
+                    }
+                    case Opcodes.FREE -> {
+                        cached = spill(s, cached, t1, t0);
+                        sm.free(s, heap);
+                    }
+                    case Opcodes.PUSHIND -> {
+                        cached = spill(s, cached, t1, t0);
+                        sm.pushind(s);
+                    }
+                    case Opcodes.STOREIND -> {
+                        cached = spill(s, cached, t1, t0);
+                        sm.storeind(s);
+                    }
+                    case Opcodes.ADDSP -> {
+                        if (operand == 1 && s.size() + cached < limit) {
+                            if (cached == 2) {
+                                s.push(t1);
+                            } else {
+                                cached++;
+                            }
+                            t1 = t0;
+                            t0 = 0;
+                        } else if (operand < 0 && -operand <= cached) {
+                            t0 = t1;
+                            cached += operand;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            sm.addsp(s, operand);
+                        }
+                    }
+                    //endereços abaixo dos locais são lidos e escritos direto no array
+                    case Opcodes.PUSHOFF -> {
+                        int address = regs.fp + operand;
+                        if (address >= 0 && address < s.size()) {
+                            if (s.size() + cached == limit) {
+                                throw OperandStack.overflow(limit);
+                            }
+                            int value = s.getUnchecked(address);
+                            if (cached == 2) {
+                                s.push(t1);
+                            } else {
+                                cached++;
+                            }
+                            t1 = t0;
+                            t0 = value;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            sm.pushoff(s, regs, operand);
+                        }
+                    }
+                    case Opcodes.STOREOFF -> {
+                        int address = regs.fp + operand;
+                        if (cached > 0 && address >= 0 && address < s.size()) {
+                            s.setUnchecked(address, t0);
+                            t0 = t1;
+                            cached--;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            sm.storeoff(s, regs, operand);
+                        }
+                    }
+                    case Opcodes.PUSHSP -> {
+                        cached = spill(s, cached, t1, t0);
+                        rm.pushsp(s);
+                    }
+                    case Opcodes.POPSP -> {
+                        cached = spill(s, cached, t1, t0);
+                        rm.popsp(s);
+                    }
+                    case Opcodes.PUSHFBR -> {
+                        if (s.size() + cached == limit) {
+                            throw OperandStack.overflow(limit);
+                        }
+                        if (cached == 2) {
+                            s.push(t1);
+                        } else {
+                            cached++;
+                        }
+                        t1 = t0;
+                        t0 = regs.fp;
+                    }
+                    case Opcodes.POPFBR -> {
+                        if (cached > 0) {
+                            regs.fp = t0;
+                            t0 = t1;
+                            cached--;
+                        } else {
+                            rm.popfbr(s, regs);
+                        }
+                    }
+                    case Opcodes.LINK -> {
+                        cached = spill(s, cached, t1, t0);
+                        rm.link(s, regs);
+                    }
+                    case Opcodes.STOP -> rm.stop(regs);
+                    case Opcodes.ADD -> {
+                        if (cached == 2) {
+                            t0 = t1 + t0;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() + t0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.add(s);
+                        }
+                    }
+                    case Opcodes.SUB -> {
+                        if (cached == 2) {
+                            t0 = t1 - t0;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() - t0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.sub(s);
+                        }
+                    }
+                    case Opcodes.TIMES -> {
+                        if (cached == 2) {
+                            t0 = t1 * t0;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() * t0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.times(s);
+                        }
+                    }
+                    case Opcodes.DIV -> {
+                        if (cached == 2 && t0 != 0) {
+                            t0 = t1 / t0;
+                            cached = 1;
+                        } else if (cached == 1 && t0 != 0 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() / t0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.div(s);
+                        }
+                    }
+                    case Opcodes.MOD -> {
+                        if (cached == 2 && t0 != 0) {
+                            t0 = t1 % t0;
+                            cached = 1;
+                        } else if (cached == 1 && t0 != 0 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() % t0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.mod(s);
+                        }
+                    }
+                    case Opcodes.OR -> {
+                        if (cached == 2) {
+                            t0 = t1 != 0 && t0 != 0 ? 1 : 0;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() != 0 && t0 != 0 ? 1 : 0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.or(s);
+                        }
+                    }
+                    case Opcodes.AND -> {
+                        if (cached == 2) {
+                            t0 = t1 != 0 && t0 != 0 ? 1 : 0;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() != 0 && t0 != 0 ? 1 : 0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.and(s);
+                        }
+                    }
+                    case Opcodes.XOR -> {
+                        if (cached == 2) {
+                            t0 = (t1 != 0) != (t0 != 0) ? 1 : 0;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = (s.popUnchecked() != 0) != (t0 != 0) ? 1 : 0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.xor(s);
+                        }
+                    }
+                    case Opcodes.NAND -> {
+                        if (cached == 2) {
+                            t0 = t1 != 0 && t0 != 0 ? 0 : 1;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() != 0 && t0 != 0 ? 0 : 1;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.nand(s);
+                        }
+                    }
+                    case Opcodes.BITAND -> {
+                        if (cached == 2) {
+                            t0 = t1 & t0;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() & t0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.bitand(s);
+                        }
+                    }
+                    case Opcodes.BITOR -> {
+                        if (cached == 2) {
+                            t0 = t1 | t0;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() | t0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.bitor(s);
+                        }
+                    }
+                    case Opcodes.BITXOR -> {
+                        if (cached == 2) {
+                            t0 = t1 ^ t0;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() ^ t0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.bitxor(s);
+                        }
+                    }
+                    case Opcodes.BITNAND -> {
+                        if (cached == 2) {
+                            t0 = ~(t1 & t0);
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = ~(s.popUnchecked() & t0);
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.bitnand(s);
+                        }
+                    }
+                    case Opcodes.GREATER -> {
+                        if (cached == 2) {
+                            t0 = t1 > t0 ? 1 : 0;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() > t0 ? 1 : 0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.greater(s);
+                        }
+                    }
+                    case Opcodes.LESS -> {
+                        if (cached == 2) {
+                            t0 = t1 < t0 ? 1 : 0;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() < t0 ? 1 : 0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.less(s);
+                        }
+                    }
+                    case Opcodes.EQUAL -> {
+                        if (cached == 2) {
+                            t0 = t1 == t0 ? 1 : 0;
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = s.popUnchecked() == t0 ? 1 : 0;
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.equal(s);
+                        }
+                    }
+                    case Opcodes.CMP -> {
+                        if (cached == 2) {
+                            t0 = Integer.compare(t1, t0);
+                            cached = 1;
+                        } else if (cached == 1 && !s.isEmpty()) {
+                            t0 = Integer.compare(s.popUnchecked(), t0);
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            al.cmp(s);
+                        }
+                    }
+                    case Opcodes.LSHIFT -> {
+                        if (cached > 0) {
+                            t0 <<= operand;
+                        } else {
+                            al.lshift(s, operand);
+                        }
+                    }
+                    case Opcodes.RSHIFT -> {
+                        if (cached > 0) {
+                            t0 >>= operand;
+                        } else {
+                            al.rshift(s, operand);
+                        }
+                    }
+                    case Opcodes.NOT, Opcodes.ISNIL -> {
+                        if (cached > 0) {
+                            t0 = t0 == 0 ? 1 : 0;
+                        } else {
+                            al.not(s);
+                        }
+                    }
+                    case Opcodes.BITNOT -> {
+                        if (cached > 0) {
+                            t0 = ~t0;
+                        } else {
+                            al.bitnot(s);
+                        }
+                    }
+                    case Opcodes.ISPOS -> {
+                        if (cached > 0) {
+                            t0 = t0 > 0 ? 1 : 0;
+                        } else {
+                            al.ispos(s);
+                        }
+                    }
+                    case Opcodes.ISNEG -> {
+                        if (cached > 0) {
+                            t0 = t0 < 0 ? 1 : 0;
+                        } else {
+                            al.isneg(s);
+                        }
+                    }
+                    case Opcodes.PRINT -> {
+                        cached = spill(s, cached, t1, t0);
+                        io.print(s);
+                    }
+                    case Opcodes.READ -> {
+                        cached = spill(s, cached, t1, t0);
+                        io.read(s);
+                    }
+                    case Opcodes.READC -> {
+                        cached = spill(s, cached, t1, t0);
+                        io.readc(s);
+                    }
+                    case Opcodes.READF -> {
+                        cached = spill(s, cached, t1, t0);
+                        io.readf(s);
+                    }
+                    case Opcodes.PRINTLN -> {
+                        cached = spill(s, cached, t1, t0);
+                        io.println(s);
+                    }
+                    case Opcodes.PRINTC -> {
+                        cached = spill(s, cached, t1, t0);
+                        io.printc(s);
+                    }
+                    case Opcodes.DUMP -> {
+                        cached = spill(s, cached, t1, t0);
+                        io.dump(s);
+                    }
+                    case Opcodes.JUMP -> next = operand;
+                    case Opcodes.JUMPC -> {
+                        if (cached > 0) {
+                            if (t0 != 0) {
+                                next = operand;
+                            }
+                            t0 = t1;
+                            cached--;
+                        } else {
+                            next = con.jumpc(s, operand, current);
+                        }
+                    }
+                    case Opcodes.JUMPIND -> {
+                        if (cached > 0) {
+                            int target = t0;
+                            t0 = t1;
+                            cached--;
+                            if (calls != null) {
+                                next = calls.jumpind(target, current, length);
+                            } else if (target < 0 || target >= length) {
+                                throw new RuntimeException("Invalid jump target in JUMPIND: " + target);
+                            } else {
+                                next = target;
+                            }
+                        } else {
+                            next = calls == null ? con.jumpind(s, length) : calls.jumpind(s, current, length);
+                        }
+                    }
+                    //a chamada começa um quadro novo: o chamado acha tudo no array
+                    case Opcodes.JSR -> {
+                        cached = spill(s, cached, t1, t0);
+                        next = calls == null ? con.jsr(s, operand, current) : calls.jsr(s, operand, current);
+                    }
+                    case Opcodes.JSRIND -> {
+                        cached = spill(s, cached, t1, t0);
+                        next = calls == null ? con.jsrind(s, current, length) : calls.jsrind(s, current, length);
+                    }
+                    case Opcodes.SKIP -> {
+                        if (cached > 0) {
+                            next = current + t0 + 1;
+                            t0 = t1;
+                            cached--;
+                        } else {
+                            next = con.skip(s, current);
+                        }
+                    }
+                    case Opcodes.INCOFF -> {
+                        int address = regs.fp + operand;
+                        if (address >= 0 && address < s.size()) {
+                            s.setUnchecked(address, s.getUnchecked(address) + operands[current + 1]);
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            sm.incoff(s, regs, operand, operands[current + 1]);
+                        }
+                        next = current + 4;
+                        executed += 3;
+                    }
+                    case Opcodes.DUP_STOREOFF -> {
+                        int address = regs.fp + operand;
+                        if (cached > 0 && address >= 0 && address < s.size()) {
+                            s.setUnchecked(address, t0);
+                        } else {
+                            cached = spill(s, cached, t1, t0);
+                            sm.dupStoreoff(s, regs, operand);
+                        }
+                        next = current + 2;
+                        executed += 1;
+                    }
+                    case Opcodes.PUSH_LESS_JUMPC -> {
+                        if (cached > 0) {
+                            next = t0 < operand ? operands[current + 2] : current + 3;
+                            t0 = t1;
+                            cached--;
+                        } else {
+                            next = con.pushLessJumpc(s, operand, operands[current + 2], current + 3);
+                        }
+                        executed += 2;
+                    }
+                    case Opcodes.PUSH_GREATER_JUMPC -> {
+                        if (cached > 0) {
+                            next = t0 > operand ? operands[current + 2] : current + 3;
+                            t0 = t1;
+                            cached--;
+                        } else {
+                            next = con.pushGreaterJumpc(s, operand, operands[current + 2], current + 3);
+                        }
+                        executed += 2;
+                    }
+                    case Opcodes.PUSH_EQUAL_JUMPC -> {
+                        if (cached > 0) {
+                            next = t0 == operand ? operands[current + 2] : current + 3;
+                            t0 = t1;
+                            cached--;
+                        } else {
+                            next = con.pushEqualJumpc(s, operand, operands[current + 2], current + 3);
+                        }
+                        executed += 2;
+                    }
+                    default -> throw new IllegalStateException("Invalid opcode at line " + (current + 1));
+                }
+                if (next <= current && (interruptRequested || executed >= sliceBudget)) {
+                    pc = next;
+                    return;
+                }
+                pc = next;
+            }
+        } finally {
+            //ao sair, por parada, fatia ou erro, a pilha volta a ter todos os valores
+            spill(s, cached, t1, t0);
+            regs.pc = pc;
+            instructionCount += executed;
+            sliceBudget -= executed;
+        }
+    }
+
+    //descarrega no array os valores do topo guardados em locais por runCached;
+    //devolve 0, o novo número de valores em locais. Não falha: runCached confere o
+    //limite da pilha antes de guardar cada valor
+    private static int spill(OperandStack s, int cached, int t1, int t0) {
+        if (cached == 2) {
+            s.push(t1);
+        }
+        if (cached > 0) {
+            s.push(t0);
+        }
+        return 0;
+    }
+
+    //conta a chegada em target e, se a região já estiver compilada, executa-a
+    private int enterCompiled(int target) {
+        CompiledRegion region = compiled[target];
+        if (region == null) {
+            //depois do limiar o contador não volta a ser igual a ele, então uma
+            //região que não compilou não é tentada de novo
+            if (++hotness[target] != jitThreshold) {
+                return target;
+            }
+            region = jit.compile(program, target);
+            if (region == null) {
+                return target;
+            }
+            compiled[target] = region;
+        }
+        return region.run(this, stack);
+    }
     
     
     public static void main(String[] args) {
+        //opções: --optimize (dobra de constantes, encadeamento de desvios e remoção de
+        //código inalcançável), --fuse (superinstruções), --show-fusions (idem, listando as fusões),
+        //--jit (compila regiões quentes para bytecode JVM), --heap-stats (estatísticas
+        //do alocador ao final), --headless (sem avisos de leitura), --input=arquivo
+        //(entrada lida do arquivo mapeado em memória), --profile (perfil em texto na
+        //saída de erro), --profile-json=arquivo, --flame=arquivo (pilhas amostradas no
+        //formato collapsed), --flame-interval=N, --max-stack=N (limite de elementos
+        //da pilha de operandos), --verify (verifica a altura da pilha
+        //e executa sem testes de pilha vazia), --tos-cache (topo da pilha em variáveis
+        //locais, para comparar com o laço de sempre), --closures (blocos traduzidos em
+        //nós por ClosureCompiler), --call-stack[=N] (pilha de retornos
+        //com até N chamadas e caches de desvios calculados; estatísticas ao final),
+        //--restore=arquivo (continua de um Snapshot), --checkpoint=arquivo (grava um
+        //Snapshot quando a máquina para) e o arquivo do programa, em texto ou no
+        //formato binário de SamBinary
+        String path = "maquina/programa.txt";
+        boolean optimize = false;
+        boolean fuse = false;
+        boolean showFusions = false;
+        boolean useJit = false;
+        boolean verify = false;
+        boolean tosCache = false;
+        boolean closureEngine = false;
+        boolean heapStats = false;
+        boolean headless = false;
+        String inputPath = null;
+        boolean profile = false;
+        String profileJson = null;
+        String flame = null;
+        int flameInterval = CallStackSampler.DEFAULT_INTERVAL;
+        int maxStack = OperandStack.DEFAULT_MAX_DEPTH;
+        int maxCalls = 0;
+        String restore = null;
+        String checkpoint = null;
+        for (String arg : args) {
+            switch (arg) {
+                case "--optimize" -> optimize = true;
+                case "--fuse" -> fuse = true;
+                case "--jit" -> useJit = true;
+                case "--verify" -> verify = true;
+                case "--tos-cache" -> tosCache = true;
+                case "--closures" -> closureEngine = true;
+                case "--heap-stats" -> heapStats = true;
+                case "--headless" -> headless = true;
+                case "--profile" -> profile = true;
+                case "--call-stack" -> maxCalls = CallStack.DEFAULT_MAX_DEPTH;
+                case "--show-fusions" -> {
+                    fuse = true;
+                    showFusions = true;
+                }
+                default -> {
+                    if (arg.startsWith("--input=")) {
+                        inputPath = arg.substring("--input=".length());
+                    } else if (arg.startsWith("--profile-json=")) {
+                        profileJson = arg.substring("--profile-json=".length());
+                    } else if (arg.startsWith("--flame=")) {
+                        flame = arg.substring("--flame=".length());
+                    } else if (arg.startsWith("--flame-interval=")) {
+                        flameInterval = Integer.parseInt(arg.substring("--flame-interval=".length()));
+                    } else if (arg.startsWith("--max-stack=")) {
+                        maxStack = Integer.parseInt(arg.substring("--max-stack=".length()));
+                    } else if (arg.startsWith("--restore=")) {
+                        restore = arg.substring("--restore=".length());
+                    } else if (arg.startsWith("--checkpoint=")) {
+                        checkpoint = arg.substring("--checkpoint=".length());
+                    } else if (arg.startsWith("--call-stack=")) {
+                        maxCalls = Integer.parseInt(arg.substring("--call-stack=".length()));
+                    } else {
+                        path = arg;
+                    }
+                }
+            }
+        }
         try{
-        List<String> lines = Files.readAllLines(Paths.get("maquina/programa.txt"));
-        String[] program = lines.toArray(new String[0]);
+        SamProgram program;
+        if (SamBinary.isBinary(Paths.get(path))) {
+            program = SamBinary.load(Paths.get(path));
+        } else {
+            //o texto é lido em blocos e descartado antes da execução
+            program = new StreamingAssembler().assemble(Paths.get(path));
+        }
+        if (optimize) {
+            Optimizer optimizer = new Optimizer();
+            program = optimizer.optimize(program);
+            System.err.println("[optimizer] " + optimizer.report());
+        }
+        if (fuse) {
+            program = new Fuser(showFusions).fuse(program);
+        }
         
-        SamInterpreter interpreter = new SamInterpreter(program, 1024);
+        SamInterpreter interpreter = new SamInterpreter(program, 1024, maxStack);
+        if (verify) {
+            interpreter.enableVerifiedMode(true);
+        }
+        if (tosCache) {
+            interpreter.enableTopOfStackCache();
+        }
+        if (closureEngine) {
+            interpreter.enableClosureCompilation();
+        }
+        if (maxCalls > 0) {
+            interpreter.enableCallStack(maxCalls);
+        }
+        if (useJit) {
+            interpreter.enableJit(JitCompiler.DEFAULT_THRESHOLD);
+        }
+        if (profile || profileJson != null) {
+            interpreter.enableProfiling();
+        }
+        if (flame != null) {
+            interpreter.enableCallSampling(flameInterval);
+        }
         Arithmetic_Logic al = new Arithmetic_Logic();
-        IO io = new IO();
+        VmInput input = inputPath == null ? ChannelInput.stdin() : ChannelInput.map(Paths.get(inputPath));
+        IO io = new IO(input, BufferedOutput.stdout(), !headless);
         RegisterManip rm = new RegisterManip();
         StackManip sm = new StackManip();
         Control con = new Control();
+        if (restore != null) {
+            Snapshot.restore(interpreter, input, Paths.get(restore));
+        }
         interpreter.execute(io, al, rm, sm, con);
+        if (checkpoint != null) {
+            Snapshot.save(interpreter, input, Paths.get(checkpoint));
+        }
+        if (heapStats) {
+            System.err.println(interpreter.heap().stats());
+        }
+        if (maxCalls > 0) {
+            System.err.println(interpreter.callStack().stats());
+        }
+        if (profile) {
+            System.err.print(interpreter.profiler().textReport());
+        }
+        if (profileJson != null) {
+            Files.writeString(Paths.get(profileJson), interpreter.profiler().jsonReport());
+        }
+        if (flame != null) {
+            interpreter.callSampler().writeCollapsed(Paths.get(flame));
+        }
         } catch (IOException e) {
             System.err.println("Erro ao ler o arquivo: " + e.getMessage());
         }
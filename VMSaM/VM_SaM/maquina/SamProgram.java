@@ -0,0 +1,54 @@
+package maquina;
+
+import java.util.Map;
+
+//programa SaM já montado: uma posição por linha do texto original,
+//de modo que os endereços (pc, JSR, JUMPIND) continuam sendo números de linha
+public final class SamProgram {
+    final int[] opcodes;   //opcode de cada linha
+    final int[] operands;  //operando inteiro, destino já resolvido ou índice em symbols
+    final String[] symbols; //nomes das variáveis de STORE/LOAD; o índice é o slot em SamInterpreter.globals
+    final Map<String, Integer> labels; //rótulo -> linha
+    final String[] source;  //texto original, para mensagens de erro (null se carregado de SamBinary)
+    private String[] labelAt; //rótulo de cada linha, montado só quando line() precisa dele
+
+    SamProgram(int[] opcodes, int[] operands, String[] symbols, Map<String, Integer> labels, String[] source) {
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.symbols = symbols;
+        this.labels = labels;
+        this.source = source;
+    }
+
+    public int length() {
+        return opcodes.length;
+    }
+
+    //texto da linha pc: o original ou, sem ele, o reconstruído a partir do código
+    public String line(int pc) {
+        if (source != null) {
+            return source[pc];
+        }
+        int op = opcodes[pc];
+        if (op == Opcodes.NOP) {
+            if (labelAt == null) {
+                String[] names = new String[opcodes.length];
+                for (Map.Entry<String, Integer> label : labels.entrySet()) {
+                    names[label.getValue()] = label.getKey();
+                }
+                labelAt = names;
+            }
+            return labelAt[pc] == null ? "" : labelAt[pc] + ":";
+        }
+        return switch (Opcodes.operandKind(op)) {
+            case Opcodes.NO_OPERAND -> Opcodes.mnemonic(op);
+            case Opcodes.VAR_OPERAND -> Opcodes.mnemonic(op) + " " + symbols[operands[pc]];
+            case Opcodes.LABEL_OPERAND -> {
+                String target = line(operands[pc]);
+                yield Opcodes.mnemonic(op) + " "
+                        + (target.endsWith(":") ? target.substring(0, target.length() - 1) : operands[pc]);
+            }
+            default -> Opcodes.mnemonic(op) + " " + operands[pc];
+        };
+    }
+}
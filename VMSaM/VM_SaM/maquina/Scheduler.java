@@ -0,0 +1,170 @@
+package maquina;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//executa muitas máquinas SaM num pool pequeno de threads, com fatias de tempo
+//cooperativas: cada máquina executa quantum instruções, devolve a thread num
+//ponto seguro (o primeiro desvio para trás depois da fatia, ver
+//SamInterpreter.executeSlice) e volta para o fim da fila do pool. Um laço sem fim
+//ocupa só as suas fatias, não uma thread.
+//
+//Entre as fatias o Scheduler confere os limites do job: instruções executadas e
+//prazo; a heap do job é criada com o tamanho limite, e um MALLOC que não cabe
+//encerra o job com HEAP_LIMIT. Cada limite tem seu ExitState.
+public class Scheduler implements AutoCloseable {
+    public static final long DEFAULT_QUANTUM = 10_000;
+
+    //limites de um job; maxInstructions 0 e timeout null são ilimitados
+    public record Limits(long maxInstructions, int heapSize, Duration timeout) {
+        public static final Limits NONE = new Limits(0, BatchRunner.DEFAULT_HEAP_SIZE, null);
+    }
+
+    private final long quantum;
+    private final int maxStackDepth;
+    private final boolean fuse;
+    private final ExecutorService workers;
+    //jobs agendados que ainda não terminaram
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public Scheduler(int threads) {
+        this(threads, DEFAULT_QUANTUM, OperandStack.DEFAULT_MAX_DEPTH, false);
+    }
+
+    public Scheduler(int threads, long quantum, int maxStackDepth, boolean fuse) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+        if (quantum < 1) {
+            throw new IllegalArgumentException("Quantum must be at least 1: " + quantum);
+        }
+        this.quantum = quantum;
+        this.maxStackDepth = maxStackDepth;
+        this.fuse = fuse;
+        this.workers = Executors.newFixedThreadPool(threads);
+    }
+
+    //máquina de um job entre as fatias
+    private static final class Task {
+        final BatchRunner.Job job;
+        final Limits limits;
+        final long deadline; //System.nanoTime() limite, ou Long.MAX_VALUE
+        final CompletableFuture<BatchRunner.Result> result = new CompletableFuture<>();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final IO io;
+        final Arithmetic_Logic al = new Arithmetic_Logic();
+        final RegisterManip rm = new RegisterManip();
+        final StackManip sm = new StackManip();
+        final Control con = new Control();
+        SamInterpreter interpreter;
+
+        Task(BatchRunner.Job job, Limits limits) {
+            this.job = job;
+            this.limits = limits;
+            this.deadline = limits.timeout() == null ? Long.MAX_VALUE
+                    : System.nanoTime() + limits.timeout().toNanos();
+            this.io = IO.headless(new ChannelInput(Channels.newChannel(new ByteArrayInputStream(job.input()))),
+                    new BufferedOutput(output));
+        }
+    }
+
+    //agenda o job; o prazo conta a partir daqui, incluindo a espera na fila
+    public CompletableFuture<BatchRunner.Result> submit(BatchRunner.Job job, Limits limits) {
+        Task task = new Task(job, limits);
+        pending.incrementAndGet();
+        workers.execute(() -> slice(task));
+        return task.result;
+    }
+
+    //executa todos os jobs com os mesmos limites e devolve os resultados na mesma ordem
+    public List<BatchRunner.Result> run(List<BatchRunner.Job> jobs, Limits limits) throws InterruptedException {
+        List<CompletableFuture<BatchRunner.Result>> futures = new ArrayList<>(jobs.size());
+        for (BatchRunner.Job job : jobs) {
+            futures.add(submit(job, limits));
+        }
+        List<BatchRunner.Result> results = new ArrayList<>(jobs.size());
+        for (CompletableFuture<BatchRunner.Result> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private void slice(Task task) {
+        try {
+            if (System.nanoTime() > task.deadline) {
+                finish(task, BatchRunner.ExitState.DEADLINE, "Deadline exceeded");
+                return;
+            }
+            if (task.interpreter == null) {
+                task.interpreter = new SamInterpreter(BatchRunner.assemble(task.job, fuse),
+                        task.limits.heapSize(), maxStackDepth);
+            }
+            SamInterpreter interpreter = task.interpreter;
+            long max = task.limits.maxInstructions();
+            long budget = max > 0 ? Math.min(quantum, max - interpreter.instructionCount()) : quantum;
+            if (!interpreter.executeSlice(task.io, task.al, task.rm, task.sm, task.con, budget)) {
+                finish(task, null, null);
+            } else if (max > 0 && interpreter.instructionCount() >= max) {
+                finish(task, BatchRunner.ExitState.INSTRUCTION_LIMIT, "Instruction limit of " + max + " reached");
+            } else if (System.nanoTime() > task.deadline) {
+                finish(task, BatchRunner.ExitState.DEADLINE, "Deadline exceeded");
+            } else {
+                //volta para o fim da fila: os outros jobs prontos executam antes
+                workers.execute(() -> slice(task));
+            }
+        } catch (RuntimeException | StackOverflowError e) {
+            finish(task, heapOverflow(e) ? BatchRunner.ExitState.HEAP_LIMIT : BatchRunner.ExitState.ERROR,
+                    BatchRunner.errorMessage(e));
+        }
+    }
+
+    //pelo tipo, não pela mensagem, e também quando outra exceção a envolve
+    private static boolean heapOverflow(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HeapOverflowException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void finish(Task task, BatchRunner.ExitState state, String error) {
+        task.io.flush();
+        task.result.complete(BatchRunner.result(task.job.name(), task.interpreter, task.output, state, error));
+        if (pending.decrementAndGet() == 0) {
+            synchronized (pending) {
+                pending.notifyAll();
+            }
+        }
+    }
+
+    //espera os jobs já agendados terminarem (eles voltam à fila a cada fatia, então
+    //o pool só pode ser encerrado depois) e termina as threads
+    @Override
+    public void close() {
+        try {
+            synchronized (pending) {
+                while (pending.get() > 0) {
+                    pending.wait();
+                }
+            }
+            workers.close();
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
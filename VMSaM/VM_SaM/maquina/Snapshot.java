@@ -0,0 +1,309 @@
+package maquina;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+//retrato do estado de uma máquina parada (depois de execute, por STOP ou
+//interrupt), para continuar a execução mais tarde ou em outro host. Todos os
+//inteiros são big-endian, como em SamBinary:
+//
+//  cabeçalho   "SAMS", versão (u16), reservado (u16), programa (CRC32 de opcodes
+//              e operandos), pc, fp, halt, posição da entrada (i64), tamanhos:
+//              pilha, globais, capacidade da heap, palavras da heap, topo da heap,
+//              listas de livres, chamadas ativas; contadores da heap (6 x i64)
+//  seções      pilha, globais (STORE), memória da heap até o pico de uso, listas de
+//              livres, endereços de retorno do modo de chamadas (i32 cada)
+//  checksum    CRC32 (i32) de todos os bytes anteriores
+//
+//Os arrays passam pelo buffer em blocos via IntBuffer, sem um objeto por elemento.
+//Na restauração tudo é lido e conferido antes de a máquina ser alterada.
+public final class Snapshot {
+    public static final int MAGIC = 0x53414D53; //"SAMS"
+    public static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int COUNTERS = 6;
+
+    private Snapshot() {
+    }
+
+    public static void save(SamInterpreter vm, VmInput input, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            save(vm, input, channel);
+        }
+    }
+
+    //input pode ser null: a posição da entrada fica 0
+    public static void save(SamInterpreter vm, VmInput input, WritableByteChannel channel) throws IOException {
+        OperandStack stack = vm.stack;
+        Heap heap = vm.heap;
+        int[] calls = vm.calls == null ? new int[0] : vm.calls.activeReturns();
+        Writer out = new Writer(channel);
+        out.putInt(MAGIC);
+        out.putInt(VERSION << 16);
+        out.putInt(fingerprint(vm.program));
+        out.putInt(vm.registers.pc);
+        out.putInt(vm.registers.fp);
+        out.putInt(vm.registers.halt ? 1 : 0);
+        out.putLong(input == null ? 0 : input.position());
+        out.putInt(stack.size());
+        out.putInt(vm.globals.length);
+        out.putInt(heap.capacity());
+        out.putInt(heap.peakTop());
+        out.putInt(heap.top());
+        out.putInt(heap.freeLists().length);
+        out.putInt(calls.length);
+        for (long counter : heap.counters()) {
+            out.putLong(counter);
+        }
+        out.putInts(stack.elements(), stack.size());
+        out.putInts(vm.globals, vm.globals.length);
+        out.putInts(heap.memory(), heap.peakTop());
+        out.putInts(heap.freeLists(), heap.freeLists().length);
+        out.putInts(calls, calls.length);
+        out.finish();
+    }
+
+    public static void restore(SamInterpreter vm, VmInput input, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            restore(vm, input, channel);
+        }
+    }
+
+    //a máquina precisa ter sido criada para o mesmo programa, com heap de pelo menos
+    //a mesma capacidade; input, se não for null, avança até a posição gravada
+    public static void restore(SamInterpreter vm, VmInput input, ReadableByteChannel channel) throws IOException {
+        Reader in = new Reader(channel);
+        if (in.getInt() != MAGIC) {
+            throw new RuntimeException("Not a SaM snapshot");
+        }
+        int version = in.getInt() >>> 16;
+        if (version != VERSION) {
+            throw new RuntimeException("Unsupported SaM snapshot version: " + version + " (expected " + VERSION + ")");
+        }
+        if (in.getInt() != fingerprint(vm.program)) {
+            throw new RuntimeException("Snapshot was taken from a different program");
+        }
+        int pc = in.getInt();
+        int fp = in.getInt();
+        boolean halt = in.getInt() != 0;
+        long inputPosition = in.getLong();
+        int stackSize = in.getInt();
+        int globalCount = in.getInt();
+        int heapCapacity = in.getInt();
+        int heapWords = in.getInt();
+        int heapTop = in.getInt();
+        int freeListCount = in.getInt();
+        int callDepth = in.getInt();
+        long[] counters = new long[COUNTERS];
+        for (int i = 0; i < COUNTERS; i++) {
+            counters[i] = in.getLong();
+        }
+        Heap heap = vm.heap;
+        if (stackSize < 0 || callDepth < 0 || heapWords < 0 || heapTop < 0 || heapTop > heapWords
+                || heapWords > heapCapacity || inputPosition < 0) {
+            throw new RuntimeException("Corrupted SaM snapshot: invalid section sizes");
+        }
+        if (globalCount != vm.globals.length || freeListCount != heap.freeLists().length) {
+            throw new RuntimeException("Snapshot was taken from a different program");
+        }
+        if (stackSize > vm.stack.maxDepth()) {
+            throw new RuntimeException("Stack overflow: maximum depth is " + vm.stack.maxDepth());
+        }
+        if (heapWords > heap.capacity()) {
+            throw new RuntimeException("Snapshot heap needs " + heapWords + " words, capacity is " + heap.capacity());
+        }
+        int[] stack = in.getInts(stackSize);
+        int[] globals = in.getInts(globalCount);
+        int[] memory = in.getInts(heapWords);
+        int[] freeLists = in.getInts(freeListCount);
+        int[] calls = in.getInts(callDepth);
+        in.finish();
+
+        vm.stack.truncate(0);
+        vm.stack.extendTo(stackSize);
+        System.arraycopy(stack, 0, vm.stack.elements(), 0, stackSize);
+        System.arraycopy(globals, 0, vm.globals, 0, globalCount);
+        int[] heapMemory = heap.memory();
+        System.arraycopy(memory, 0, heapMemory, 0, heapWords);
+        Arrays.fill(heapMemory, heapWords, heapMemory.length, 0);
+        System.arraycopy(freeLists, 0, heap.freeLists(), 0, freeListCount);
+        heap.restore(heapTop, counters);
+        if (vm.calls != null) {
+            vm.calls.restore(calls);
+        }
+        vm.registers.pc = pc;
+        vm.registers.fp = fp;
+        vm.registers.halt = halt;
+        if (input != null) {
+            input.skipTo(inputPosition);
+        }
+    }
+
+    //identifica o programa: CRC32 dos opcodes e operandos decodificados
+    static int fingerprint(SamProgram program) {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        for (int[] section : new int[][] {program.opcodes, program.operands}) {
+            for (int from = 0; from < section.length; from += BUFFER_SIZE / 4) {
+                int count = Math.min(BUFFER_SIZE / 4, section.length - from);
+                buffer.clear();
+                buffer.asIntBuffer().put(section, from, count);
+                buffer.limit(count * 4);
+                crc.update(buffer);
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    //grava em blocos, atualizando o CRC32 com cada bloco antes de enviá-lo
+    private static final class Writer {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        private final CRC32 crc = new CRC32();
+
+        Writer(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            room(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            room(8);
+            buffer.putLong(value);
+        }
+
+        void putInts(int[] values, int count) throws IOException {
+            int from = 0;
+            while (from < count) {
+                if (buffer.remaining() < 4) {
+                    drain();
+                }
+                int step = Math.min(count - from, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, from, step);
+                buffer.position(buffer.position() + step * 4);
+                from += step;
+            }
+        }
+
+        void finish() throws IOException {
+            drain();
+            buffer.putInt((int) crc.getValue());
+            write();
+        }
+
+        private void room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            crc.update(buffer.array(), 0, buffer.limit());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void write() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    //lê em blocos; o CRC32 cobre os bytes já consumidos
+    private static final class Reader {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        private final CRC32 crc = new CRC32();
+
+        Reader(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        int getInt() throws IOException {
+            need(4);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            need(8);
+            return buffer.getLong();
+        }
+
+        int[] getInts(int count) throws IOException {
+            int[] values = new int[count];
+            int from = 0;
+            while (from < count) {
+                if (buffer.remaining() < 4) {
+                    need(4);
+                }
+                int step = Math.min(count - from, buffer.remaining() / 4);
+                buffer.asIntBuffer().get(values, from, step);
+                buffer.position(buffer.position() + step * 4);
+                from += step;
+            }
+            return values;
+        }
+
+        //o checksum gravado tem de bater com os bytes lidos e encerrar o arquivo
+        void finish() throws IOException {
+            crc.update(buffer.array(), 0, buffer.position());
+            buffer.compact().flip();
+            int expected = (int) crc.getValue();
+            fill(4);
+            if (buffer.getInt() != expected) {
+                throw new RuntimeException("Corrupted SaM snapshot: checksum mismatch");
+            }
+            if (buffer.hasRemaining() || readMore()) {
+                throw new RuntimeException("Corrupted SaM snapshot: trailing data");
+            }
+        }
+
+        //garante bytes no buffer, contando no CRC32 os que já foram consumidos
+        private void need(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            crc.update(buffer.array(), 0, buffer.position());
+            buffer.compact().flip();
+            fill(bytes);
+        }
+
+        private void fill(int bytes) throws IOException {
+            while (buffer.remaining() < bytes) {
+                if (!readMore()) {
+                    throw new RuntimeException("Corrupted SaM snapshot: unexpected end of file");
+                }
+            }
+        }
+
+        private boolean readMore() throws IOException {
+            buffer.compact();
+            int n;
+            try {
+                n = channel.read(buffer);
+            } finally {
+                buffer.flip();
+            }
+            return n > 0;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package maquina;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//verificador de altura da pilha feito na carga, no estilo do verificador de bytecode
+//da JVM: uma análise de fluxo de dados sobre o grafo de controle calcula, para cada
+//linha, quantos valores a pilha tem no mínimo ao chegar nela (minDepth). Como
+//PUSHOFF/STOREOFF podem aumentar a pilha e POPSP a corta para um valor calculado, a
+//altura exata não é conhecida; um limite inferior basta para descartar underflow.
+//
+//Desvios calculados (JUMPIND, JSRIND, SKIP) não têm arestas na análise. O retorno
+//de uma chamada é suposto na linha seguinte ao JSR/JSRIND, com a sub-rotina deixando
+//a pilha como a encontrou; o interpretador confere minDepth ao chegar num destino
+//calculado e, se a suposição falhar, continua pelo caminho com verificações.
+public final class StackVerifier {
+    //linha que a análise não alcança (só por desvio calculado, ou código morto)
+    static final int UNREACHED = Integer.MAX_VALUE;
+    //em fastOpcodes: linha que precisa do caminho com verificações
+    static final int CHECKED = -1;
+
+    final int[] minDepth;
+    //opcodes para o laço sem verificações: CHECKED onde a análise não garante a pilha
+    final int[] fastOpcodes;
+    private final List<String> problems;
+
+    private StackVerifier(int[] minDepth, int[] fastOpcodes, List<String> problems) {
+        this.minDepth = minDepth;
+        this.fastOpcodes = fastOpcodes;
+        this.problems = problems;
+    }
+
+    public static StackVerifier verify(SamProgram program) {
+        int[] opcodes = program.opcodes;
+        int[] operands = program.operands;
+        int length = opcodes.length;
+        int[] depth = new int[length];
+        Arrays.fill(depth, UNREACHED);
+
+        //lista de trabalho: linhas cuja altura mínima diminuiu
+        int[] work = new int[Math.max(16, length)];
+        boolean[] queued = new boolean[length];
+        int pending = 0;
+        if (length > 0) {
+            depth[0] = 0;
+            work[pending++] = 0;
+            queued[0] = true;
+        }
+        while (pending > 0) {
+            int pc = work[--pending];
+            queued[pc] = false;
+            int op = opcodes[pc];
+            int operand = operands[pc];
+            //se a instrução não falhou, a pilha tinha pelo menos need valores
+            int h = Math.max(depth[pc], need(op, operand));
+            int out = after(op, operand, h);
+            int fallthrough = pc + Opcodes.width(op);
+            int target = -1;
+            switch (op) {
+                case Opcodes.STOP, Opcodes.JUMPIND, Opcodes.SKIP -> fallthrough = -1;
+                case Opcodes.JUMP -> {
+                    target = operand;
+                    fallthrough = -1;
+                }
+                case Opcodes.JUMPC -> target = operand;
+                case Opcodes.PUSH_LESS_JUMPC, Opcodes.PUSH_GREATER_JUMPC, Opcodes.PUSH_EQUAL_JUMPC ->
+                        target = operands[pc + 2];
+                //retorno suposto com a pilha como antes da chamada
+                case Opcodes.JSR -> {
+                    target = operand;
+                    out = h;
+                }
+                case Opcodes.JSRIND -> out = h - 1;
+                default -> {
+                }
+            }
+            //destinos fora do programa encerram a execução: não há aresta
+            if (target >= length) {
+                target = -1;
+            }
+            if (op == Opcodes.JSR && target >= 0) {
+                pending = merge(depth, work, queued, pending, target, h + 1);
+                target = -1;
+            }
+            if (target >= 0) {
+                pending = merge(depth, work, queued, pending, target, out);
+            }
+            if (fallthrough >= 0 && fallthrough < length) {
+                pending = merge(depth, work, queued, pending, fallthrough, out);
+            }
+            if (pending + 2 > work.length) {
+                work = Arrays.copyOf(work, work.length * 2);
+            }
+        }
+
+        int[] fast = opcodes.clone();
+        List<String> problems = new ArrayList<>();
+        for (int pc = 0; pc < length; pc++) {
+            int required = need(opcodes[pc], operands[pc]);
+            if (depth[pc] == UNREACHED) {
+                fast[pc] = CHECKED;
+            } else if (depth[pc] < required) {
+                fast[pc] = CHECKED;
+                problems.add("Possible stack underflow at line " + (pc + 1) + ": "
+                        + Opcodes.mnemonic(opcodes[pc]) + " needs " + required
+                        + (required == 1 ? " value" : " values") + ", only " + depth[pc] + " guaranteed");
+            }
+        }
+        return new StackVerifier(depth, fast, problems);
+    }
+
+    private static int merge(int[] depth, int[] work, boolean[] queued, int pending, int pc, int height) {
+        if (height < depth[pc]) {
+            depth[pc] = height;
+            if (!queued[pc]) {
+                queued[pc] = true;
+                work[pending++] = pc;
+            }
+        }
+        return pending;
+    }
+
+    //valores que a instrução consome do topo
+    static int need(int op, int operand) {
+        return switch (op) {
+            case Opcodes.POP, Opcodes.STORE, Opcodes.DUP, Opcodes.MALLOC, Opcodes.FREE,
+                 Opcodes.PUSHIND, Opcodes.STOREOFF, Opcodes.POPSP, Opcodes.POPFBR,
+                 Opcodes.LSHIFT, Opcodes.RSHIFT, Opcodes.NOT, Opcodes.BITNOT,
+                 Opcodes.ISNIL, Opcodes.ISPOS, Opcodes.ISNEG,
+                 Opcodes.PRINT, Opcodes.PRINTLN, Opcodes.PRINTC,
+                 Opcodes.JUMPC, Opcodes.JUMPIND, Opcodes.JSRIND, Opcodes.SKIP,
+                 Opcodes.DUP_STOREOFF, Opcodes.PUSH_LESS_JUMPC, Opcodes.PUSH_GREATER_JUMPC,
+                 Opcodes.PUSH_EQUAL_JUMPC -> 1;
+            case Opcodes.SWAP, Opcodes.STOREIND, Opcodes.ADD, Opcodes.SUB, Opcodes.TIMES,
+                 Opcodes.DIV, Opcodes.MOD, Opcodes.OR, Opcodes.AND, Opcodes.XOR, Opcodes.NAND,
+                 Opcodes.BITAND, Opcodes.BITOR, Opcodes.BITXOR, Opcodes.BITNAND,
+                 Opcodes.GREATER, Opcodes.LESS, Opcodes.EQUAL, Opcodes.CMP -> 2;
+            case Opcodes.ADDSP -> Math.max(0, -operand);
+            default -> 0;
+        };
+    }
+
+    //altura mínima depois da instrução, dada a altura mínima h >= need antes dela
+    private static int after(int op, int operand, int h) {
+        return switch (op) {
+            //PUSHOFF, STOREOFF e as superinstruções sobre o quadro estendem a pilha até
+            //fp + n + 1; fp não é conhecido, mas se a instrução não falhou o endereço
+            //era válido e a pilha ficou com pelo menos um valor
+            case Opcodes.PUSHOFF -> Math.max(h, 1) + 1;
+            case Opcodes.STOREOFF -> Math.max(h - 1, 1);
+            case Opcodes.INCOFF, Opcodes.DUP_STOREOFF -> Math.max(h, 1);
+            case Opcodes.PUSH, Opcodes.LOAD, Opcodes.DUP, Opcodes.PUSHSP,
+                 Opcodes.PUSHFBR, Opcodes.LINK, Opcodes.READ, Opcodes.READC, Opcodes.READF -> h + 1;
+            case Opcodes.POP, Opcodes.STORE, Opcodes.FREE, Opcodes.POPFBR,
+                 Opcodes.JUMPC, Opcodes.JUMPIND, Opcodes.SKIP,
+                 Opcodes.PUSH_LESS_JUMPC, Opcodes.PUSH_GREATER_JUMPC, Opcodes.PUSH_EQUAL_JUMPC,
+                 Opcodes.ADD, Opcodes.SUB, Opcodes.TIMES, Opcodes.DIV, Opcodes.MOD, Opcodes.OR,
+                 Opcodes.AND, Opcodes.XOR, Opcodes.NAND, Opcodes.BITAND, Opcodes.BITOR,
+                 Opcodes.BITXOR, Opcodes.BITNAND, Opcodes.GREATER, Opcodes.LESS, Opcodes.EQUAL,
+                 Opcodes.CMP -> h - 1;
+            case Opcodes.STOREIND -> h - 2;
+            case Opcodes.ADDSP -> h + operand;
+            //POPSP corta a pilha para um tamanho calculado
+            case Opcodes.POPSP -> 0;
+            default -> h;
+        };
+    }
+
+    //true se nenhuma linha alcançável pode esvaziar a pilha antes da hora
+    public boolean isVerified() {
+        return problems.isEmpty();
+    }
+
+    public List<String> problems() {
+        return problems;
+    }
+
+    //altura mínima garantida ao chegar na linha, ou -1 se a análise não a alcança
+    public int minDepth(int line) {
+        return minDepth[line] == UNREACHED ? -1 : minDepth[line];
+    }
+
+    //linhas que o laço sem verificações executa
+    public int verifiedLines() {
+        int count = 0;
+        for (int op : fastOpcodes) {
+            if (op != CHECKED) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,397 @@
+package maquina;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+//montador para programas muito grandes: lê o texto de um canal em blocos de
+//chunkSize bytes e decodifica cada bloco em paralelo (fork-join, dividindo em
+//fins de linha). Referências a rótulos ficam pendentes e são resolvidas numa
+//segunda passada, depois que todos os blocos foram lidos. Só um bloco de texto
+//existe por vez e o SamProgram resultante não guarda o texto (source é null).
+//Aceita o mesmo texto e produz o mesmo programa que o Assembler; num texto
+//inválido, as mensagens de erro são as mesmas e saem na mesma ordem.
+public class StreamingAssembler {
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 22;
+    //bytes de texto decodificados por uma única tarefa
+    private static final int LEAF_SIZE = 1 << 16;
+
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    public StreamingAssembler() {
+        this(DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    public StreamingAssembler(int chunkSize, ForkJoinPool pool) {
+        this.chunkSize = Math.max(chunkSize, 64);
+        this.pool = pool;
+    }
+
+    public SamProgram assemble(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return assemble(channel);
+        }
+    }
+
+    public SamProgram assemble(ReadableByteChannel channel) throws IOException {
+        ArrayList<Segment> segments = new ArrayList<>();
+        byte[] text = new byte[chunkSize];
+        int filled = 0;
+        boolean eof = false;
+        while (!eof) {
+            if (filled == text.length) {
+                //uma linha maior que o bloco: aumenta o bloco
+                text = Arrays.copyOf(text, text.length * 2);
+            }
+            int n = channel.read(ByteBuffer.wrap(text, filled, text.length - filled));
+            if (n < 0) {
+                eof = true;
+            } else {
+                filled += n;
+            }
+            int cut = eof ? filled : cut(text, filled);
+            if (cut > 0) {
+                segments.addAll(pool.invoke(new Decode(text, 0, cut, eof)));
+                System.arraycopy(text, cut, text, 0, filled - cut);
+                filled -= cut;
+            }
+        }
+        return link(segments);
+    }
+
+    //fim do último fim de linha completo do bloco, ou 0 se não houver nenhum
+    private static int cut(byte[] text, int filled) {
+        for (int i = filled - 1; i >= 0; i--) {
+            if (text[i] == '\n') {
+                return i + 1;
+            }
+        }
+        //arquivo só com '\r': o último '\r' não pode ser o último byte lido,
+        //porque o '\n' de um "\r\n" pode estar no próximo bloco
+        for (int i = filled - 2; i >= 0; i--) {
+            if (text[i] == '\r') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    // ---- decodificação paralela ----
+
+    //linhas decodificadas de um trecho do texto; as linhas são numeradas a partir de 0
+    private static final class Segment {
+        int lines;
+        int[] opcodes;
+        int[] operands;
+        //referências a rótulos: linha e nome, resolvidas em link
+        final ArrayList<Integer> labelRefLines = new ArrayList<>();
+        final ArrayList<String> labelRefNames = new ArrayList<>();
+        //definições de rótulos, na ordem das linhas
+        final ArrayList<Integer> labelLines = new ArrayList<>();
+        final ArrayList<String> labelNames = new ArrayList<>();
+        //variáveis: o operando de STORE/LOAD é um índice local em vars
+        final ArrayList<String> vars = new ArrayList<>();
+        final HashMap<String, Integer> varIndex = new HashMap<>();
+        //erros: linha local e texto antes/depois de "at line N"
+        final ArrayList<Integer> errorLines = new ArrayList<>();
+        final ArrayList<String[]> errors = new ArrayList<>();
+
+        Segment(int capacity) {
+            opcodes = new int[capacity];
+            operands = new int[capacity];
+        }
+
+        void error(int line, String before, String after) {
+            errorLines.add(line);
+            errors.add(new String[] {before, after});
+        }
+    }
+
+    private static final class Decode extends RecursiveTask<List<Segment>> {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] text;
+        private final int from;
+        private final int to;
+        private final boolean last; //o trecho termina no fim do arquivo
+
+        Decode(byte[] text, int from, int to, boolean last) {
+            this.text = text;
+            this.from = from;
+            this.to = to;
+            this.last = last;
+        }
+
+        @Override
+        protected List<Segment> compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = from + (to - from) / 2;
+                while (mid < to && text[mid - 1] != '\n') {
+                    mid++;
+                }
+                if (mid < to) {
+                    Decode left = new Decode(text, from, mid, false);
+                    Decode right = new Decode(text, mid, to, last);
+                    left.fork();
+                    List<Segment> result = new ArrayList<>(right.compute());
+                    result.addAll(0, left.join());
+                    return result;
+                }
+            }
+            return List.of(decode());
+        }
+
+        private Segment decode() {
+            Segment segment = new Segment(Math.max(16, (to - from) / 8));
+            int pos = from;
+            int line = 0;
+            while (pos < to) {
+                int end = pos;
+                while (end < to && text[end] != '\n' && text[end] != '\r') {
+                    end++;
+                }
+                if (line == segment.opcodes.length) {
+                    segment.opcodes = Arrays.copyOf(segment.opcodes, line * 2);
+                    segment.operands = Arrays.copyOf(segment.operands, line * 2);
+                }
+                decodeLine(segment, line, pos, end);
+                line++;
+                pos = end;
+                if (pos < to && text[pos] == '\r') {
+                    pos++;
+                }
+                if (pos < to && text[pos] == '\n' && (pos == end || text[pos - 1] == '\r')) {
+                    pos++;
+                }
+            }
+            segment.lines = line;
+            return segment;
+        }
+
+        private void decodeLine(Segment segment, int line, int start, int end) {
+            //mesmo recorte de String.trim
+            while (start < end && (text[start] & 0xff) <= ' ') {
+                start++;
+            }
+            while (end > start && (text[end - 1] & 0xff) <= ' ') {
+                end--;
+            }
+            if (start == end) {
+                return;
+            }
+            if (text[end - 1] == ':') {
+                segment.labelLines.add(line);
+                segment.labelNames.add(string(start, end - 1));
+                return;
+            }
+            //mesma divisão de split("\\s+"): no máximo três partes interessam
+            int mnemonicEnd = tokenEnd(start, end);
+            int operandStart = skipSpace(mnemonicEnd, end);
+            int operandEnd = tokenEnd(operandStart, end);
+            boolean oneOperand = operandStart < end && skipSpace(operandEnd, end) == end;
+
+            String mnemonic = string(start, mnemonicEnd);
+            int op = Opcodes.lookup(mnemonic);
+            if (op < 0) {
+                segment.error(line, "Unknown instruction", ": " + mnemonic);
+                return;
+            }
+            int kind = Opcodes.operandKind(op);
+            if (kind != Opcodes.NO_OPERAND && !oneOperand) {
+                //a linha fica como NOP, como no Assembler: um LOAD sem operando não entra em link
+                segment.error(line, "Syntax error", ": " + mnemonic + " requires exactly one operand");
+                return;
+            }
+            segment.opcodes[line] = op;
+            if (kind == Opcodes.NO_OPERAND) {
+                return;
+            }
+            switch (kind) {
+                case Opcodes.INT_OPERAND -> {
+                    long value = parseInt(operandStart, operandEnd);
+                    if (value == Long.MIN_VALUE) {
+                        segment.error(line, "Invalid integer operand for " + mnemonic,
+                                ": " + string(operandStart, operandEnd));
+                    } else {
+                        segment.operands[line] = (int) value;
+                    }
+                }
+                case Opcodes.LABEL_OPERAND -> {
+                    segment.labelRefLines.add(line);
+                    segment.labelRefNames.add(string(operandStart, operandEnd));
+                }
+                default -> {
+                    String name = string(operandStart, operandEnd);
+                    Integer index = segment.varIndex.get(name);
+                    if (index == null) {
+                        index = segment.vars.size();
+                        segment.vars.add(name);
+                        segment.varIndex.put(name, index);
+                    }
+                    segment.operands[line] = index;
+                }
+            }
+        }
+
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\n' || b == 0x0b || b == '\f' || b == '\r';
+        }
+
+        private int tokenEnd(int pos, int end) {
+            while (pos < end && !isSpace(text[pos])) {
+                pos++;
+            }
+            return pos;
+        }
+
+        private int skipSpace(int pos, int end) {
+            while (pos < end && isSpace(text[pos])) {
+                pos++;
+            }
+            return pos;
+        }
+
+        //Integer.parseInt direto dos bytes; devolve Long.MIN_VALUE se inválido
+        private long parseInt(int start, int end) {
+            int pos = start;
+            boolean negative = false;
+            if (text[pos] == '-' || text[pos] == '+') {
+                negative = text[pos] == '-';
+                pos++;
+            }
+            if (pos == end) {
+                return Long.MIN_VALUE;
+            }
+            long value = 0;
+            for (; pos < end; pos++) {
+                int digit = text[pos] - '0';
+                if (digit < 0 || digit > 9) {
+                    //dígitos não ASCII: deixa a conversão para Integer.parseInt
+                    try {
+                        return Integer.parseInt(string(start, end));
+                    } catch (NumberFormatException e) {
+                        return Long.MIN_VALUE;
+                    }
+                }
+                value = value * 10 + digit;
+                if (value > Integer.MAX_VALUE + 1L) {
+                    return Long.MIN_VALUE;
+                }
+            }
+            value = negative ? -value : value;
+            return value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+        }
+
+        private String string(int start, int end) {
+            return new String(text, start, end - start, StandardCharsets.UTF_8);
+        }
+    }
+
+    // ---- segunda passada ----
+
+    //junta os trechos na ordem, numera as variáveis e resolve os rótulos
+    private static SamProgram link(List<Segment> segments) {
+        int length = 0;
+        for (Segment segment : segments) {
+            length += segment.lines;
+        }
+        int[] opcodes = new int[length];
+        int[] operands = new int[length];
+        HashMap<String, Integer> labels = new HashMap<>();
+        ArrayList<String> symbols = new ArrayList<>();
+        HashMap<String, Integer> symbolIndex = new HashMap<>();
+        ArrayList<String> duplicates = new ArrayList<>();
+        ArrayList<String> errors = new ArrayList<>();
+
+        int base = 0;
+        for (Segment segment : segments) {
+            System.arraycopy(segment.opcodes, 0, opcodes, base, segment.lines);
+            int[] slots = new int[segment.vars.size()];
+            for (int i = 0; i < slots.length; i++) {
+                String name = segment.vars.get(i);
+                Integer slot = symbolIndex.get(name);
+                if (slot == null) {
+                    slot = symbols.size();
+                    symbols.add(name);
+                    symbolIndex.put(name, slot);
+                }
+                slots[i] = slot;
+            }
+            for (int line = 0; line < segment.lines; line++) {
+                int op = segment.opcodes[line];
+                operands[base + line] = op == Opcodes.STORE || op == Opcodes.LOAD
+                        ? slots[segment.operands[line]] : segment.operands[line];
+            }
+            for (int i = 0; i < segment.labelLines.size(); i++) {
+                String label = segment.labelNames.get(i);
+                int line = base + segment.labelLines.get(i);
+                Integer previous = labels.putIfAbsent(label, line);
+                if (previous != null) {
+                    duplicates.add("Duplicate label at line " + (line + 1) + ": " + label
+                            + " (first defined at line " + (previous + 1) + ")");
+                }
+            }
+            base += segment.lines;
+        }
+
+        //rótulos resolvidos; os erros dos trechos e os rótulos não encontrados
+        //são intercalados para sair em ordem de linha, como no Assembler
+        base = 0;
+        for (Segment segment : segments) {
+            int e = 0;
+            for (int i = 0; i < segment.labelRefLines.size(); i++) {
+                int line = segment.labelRefLines.get(i);
+                for (; e < segment.errors.size() && segment.errorLines.get(e) < line; e++) {
+                    errors.add(error(segment, e, base));
+                }
+                String label = segment.labelRefNames.get(i);
+                Integer target = labels.get(label);
+                if (target == null) {
+                    errors.add("Label not found at line " + (base + line + 1) + ": " + label);
+                    target = -1;
+                }
+                operands[base + line] = target;
+            }
+            for (; e < segment.errors.size(); e++) {
+                errors.add(error(segment, e, base));
+            }
+            base += segment.lines;
+        }
+
+        //LOAD de uma variável que nenhum STORE do programa escreve
+        BitSet stored = new BitSet(symbols.size());
+        for (int line = 0; line < length; line++) {
+            if (opcodes[line] == Opcodes.STORE) {
+                stored.set(operands[line]);
+            }
+        }
+        for (int line = 0; line < length; line++) {
+            if (opcodes[line] == Opcodes.LOAD && !stored.get(operands[line])) {
+                errors.add("Variable never stored at line " + (line + 1) + ": " + symbols.get(operands[line]));
+            }
+        }
+
+        if (!duplicates.isEmpty() || !errors.isEmpty()) {
+            duplicates.addAll(errors);
+            throw new RuntimeException(String.join("\n", duplicates));
+        }
+        return new SamProgram(opcodes, operands, symbols.toArray(new String[0]), labels, null);
+    }
+
+    private static String error(Segment segment, int index, int base) {
+        String[] error = segment.errors.get(index);
+        return error[0] + " at line " + (base + segment.errorLines.get(index) + 1) + error[1];
+    }
+}
@@ -0,0 +1,17 @@
+package maquina;
+
+//origem da entrada da máquina (READ, READC, READF); os valores são separados por espaço em branco
+public interface VmInput {
+    int readInt();
+
+    //primeiro caractere do próximo valor; o resto do valor é descartado
+    char readChar();
+
+    float readFloat();
+
+    //bytes da entrada já consumidos pela máquina
+    long position();
+
+    //descarta a entrada até position, ao continuar um Snapshot
+    void skipTo(long position);
+}
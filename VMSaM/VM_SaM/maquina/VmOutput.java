@@ -0,0 +1,15 @@
+package maquina;
+
+//destino da saída da máquina (PRINT, PRINTLN, PRINTC, DUMP)
+public interface VmOutput {
+    //escreve o inteiro seguido de fim de linha
+    void printInt(int value);
+
+    void printChar(char c);
+
+    //escreve o texto seguido de fim de linha
+    void printLine(String text);
+
+    //entrega ao destino tudo o que ainda está no buffer
+    void flush();
+}
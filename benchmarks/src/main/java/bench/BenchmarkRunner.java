@@ -0,0 +1,26 @@
+package bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//ponto de entrada do jar de benchmarks: aceita as opções de linha de comando do
+//JMH e grava os resultados em JSON (jmh-result.json, salvo se -rf/-rff forem dados)
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        if (cmd.getResultFormat().hasValue() == false) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (cmd.getResult().hasValue() == false) {
+            builder.result("jmh-result.json");
+        }
+        Options options = builder.parent(cmd).build();
+        new Runner(options).run();
+    }
+}
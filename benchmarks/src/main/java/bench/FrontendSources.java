@@ -0,0 +1,65 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Map;
+
+//fontes geradas na linguagem do front-end e acesso às classes do pacote padrão
+//(LexicalAnalysis e LL1Checker não têm pacote, então não podem ser importadas)
+final class FrontendSources {
+    static final MethodHandle LEXICAL_ANALYSIS;
+    static final MethodHandle TOKENIZE;
+    static final MethodHandle BUILD_GRAMMAR;
+    static final MethodHandle NEW_CHECKER;
+    static final MethodHandle PARSE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> lexer = Class.forName("LexicalAnalysis");
+            Class<?> checker = Class.forName("LL1Checker");
+            LEXICAL_ANALYSIS = lookup.findStatic(lexer, "lexicalAnalysis",
+                    MethodType.methodType(List.class, String.class));
+            TOKENIZE = lookup.findStatic(checker, "tokenize",
+                    MethodType.methodType(List.class, String.class));
+            BUILD_GRAMMAR = lookup.findStatic(checker, "buildGrammar",
+                    MethodType.methodType(Map.class));
+            NEW_CHECKER = lookup.findConstructor(checker,
+                    MethodType.methodType(void.class, Map.class, String.class))
+                    .asType(MethodType.methodType(Object.class, Map.class, String.class));
+            PARSE = lookup.findVirtual(checker, "parse",
+                    MethodType.methodType(boolean.class, List.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, List.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private FrontendSources() {
+    }
+
+    //blocks repetições de declarações, atribuições, ratinho e uepa/ui, cada uma com variáveis próprias
+    static String program(int blocks) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < blocks; i++) {
+            String x = "x" + i;
+            String y = "y" + i;
+            source.append("xaropinho ").append(x).append(";\n");
+            source.append("xaropinho ").append(y).append(";\n");
+            source.append(x).append(" = ").append(i % 10).append(";\n");
+            source.append(y).append(" = ").append(x).append(" + 8;\n");
+            source.append(x).append(" + ").append(y).append(";\n\n");
+            source.append("ratinho (").append(y).append(" <= 15) {\n");
+            source.append("    ").append(y).append(" = ").append(y).append(" + 1;\n");
+            source.append("}\n\n");
+            source.append("uepa (").append(y).append(" > ").append(x).append(") shi {\n");
+            source.append("    ").append(x).append(" = ").append(y).append(";\n");
+            source.append("}   ui(").append(y).append(" < ").append(x).append(") shi {\n");
+            source.append("    ").append(y).append(" = ").append(x).append(";\n");
+            source.append("}\n\n");
+        }
+        return source.toString();
+    }
+}
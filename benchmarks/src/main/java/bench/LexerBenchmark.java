@@ -0,0 +1,40 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//LexicalAnalysis.lexicalAnalysis sobre um fonte gerado
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+    @Param({"100", "1000"})
+    public int blocks;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = FrontendSources.program(blocks);
+    }
+
+    @Benchmark
+    public List<?> lex() throws Throwable {
+        return (List<?>) FrontendSources.LEXICAL_ANALYSIS.invokeExact(source);
+    }
+}
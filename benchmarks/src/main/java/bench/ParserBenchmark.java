@@ -0,0 +1,61 @@
+package bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//tokenização e análise LL(1) da gramática de gramatica/LL1Checker
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"100", "1000"})
+    public int blocks;
+
+    private String source;
+    private Map<?, ?> grammar;
+    private Object checker;
+    private List<?> tokens;
+
+    @Setup
+    public void setup() throws Throwable {
+        source = FrontendSources.program(blocks);
+        grammar = (Map<?, ?>) FrontendSources.BUILD_GRAMMAR.invokeExact();
+        checker = (Object) FrontendSources.NEW_CHECKER.invokeExact(grammar, "S");
+        tokens = (List<?>) FrontendSources.TOKENIZE.invokeExact(source);
+        if (!(boolean) FrontendSources.PARSE.invokeExact(checker, tokens)) {
+            throw new IllegalStateException("Generated source rejected by the grammar");
+        }
+    }
+
+    @Benchmark
+    public List<?> tokenize() throws Throwable {
+        return (List<?>) FrontendSources.TOKENIZE.invokeExact(source);
+    }
+
+    @Benchmark
+    public boolean parse() throws Throwable {
+        return (boolean) FrontendSources.PARSE.invokeExact(checker, tokens);
+    }
+
+    //construção dos conjuntos FIRST/FOLLOW e da tabela preditiva
+    @Benchmark
+    public Object buildChecker() throws Throwable {
+        return (Object) FrontendSources.NEW_CHECKER.invokeExact(grammar, "S");
+    }
+}
@@ -0,0 +1,151 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//programas SaM usados pelos benchmarks da máquina; nenhum imprime nada
+final class SamWorkloads {
+    private SamWorkloads() {
+    }
+
+    //laço aritmético com duas variáveis locais no frame base
+    static String[] arithmeticLoop(int iterations) {
+        return lines(
+                "ADDSP 2",
+                "loop:",
+                "PUSHOFF 0",
+                "PUSH " + iterations,
+                "LESS",
+                "ISNIL",
+                "JUMPC end",
+                "PUSHOFF 1",
+                "PUSHOFF 0",
+                "PUSH 3",
+                "TIMES",
+                "ADD",
+                "PUSH 255",
+                "BITAND",
+                "STOREOFF 1",
+                "PUSHOFF 0",
+                "PUSH 1",
+                "ADD",
+                "STOREOFF 0",
+                "JUMP loop",
+                "end:",
+                "STOP");
+    }
+
+    //fib(n) recursivo com JSR/JUMPIND
+    static String[] recursiveFib(int n) {
+        return lines(
+                "ADDSP 1",
+                "PUSH " + n,
+                "LINK",
+                "JSR fib",
+                "POPFBR",
+                "ADDSP -1",
+                "STOP",
+                "fib:",
+                "PUSHOFF -1",
+                "PUSH 2",
+                "LESS",
+                "JUMPC base",
+                "ADDSP 1",
+                "PUSHOFF -1",
+                "PUSH 1",
+                "SUB",
+                "LINK",
+                "JSR fib",
+                "POPFBR",
+                "ADDSP -1",
+                "ADDSP 1",
+                "PUSHOFF -1",
+                "PUSH 2",
+                "SUB",
+                "LINK",
+                "JSR fib",
+                "POPFBR",
+                "ADDSP -1",
+                "ADD",
+                "STOREOFF -2",
+                "JUMPIND",
+                "base:",
+                "PUSHOFF -1",
+                "STOREOFF -2",
+                "JUMPIND");
+    }
+
+    //count alocações de blockSize palavras; a heap precisa de count * (blockSize + 1)
+    static String[] mallocLoop(int count, int blockSize) {
+        return lines(
+                "ADDSP 1",
+                "loop:",
+                "PUSHOFF 0",
+                "PUSH " + count,
+                "LESS",
+                "ISNIL",
+                "JUMPC end",
+                "PUSH " + blockSize,
+                "MALLOC",
+                "POP",
+                "PUSHOFF 0",
+                "PUSH 1",
+                "ADD",
+                "STOREOFF 0",
+                "JUMP loop",
+                "end:",
+                "STOP");
+    }
+
+    //repetitions chamadas recursivas de profundidade depth, cada frame com locals variáveis locais
+    static String[] deepFrames(int repetitions, int depth, int locals) {
+        List<String> program = new ArrayList<>(List.of(
+                "ADDSP 1",
+                "outer:",
+                "PUSHOFF 0",
+                "PUSH " + repetitions,
+                "LESS",
+                "ISNIL",
+                "JUMPC end",
+                "PUSH " + depth,
+                "LINK",
+                "JSR rec",
+                "POPFBR",
+                "POP",
+                "PUSHOFF 0",
+                "PUSH 1",
+                "ADD",
+                "STOREOFF 0",
+                "JUMP outer",
+                "end:",
+                "STOP",
+                "rec:",
+                "ADDSP " + locals,
+                "PUSHOFF -1",
+                "STOREOFF 2"));
+        //copia o argumento pelas variáveis locais do frame
+        for (int i = 3; i < locals + 2; i++) {
+            program.add("PUSHOFF " + (i - 1));
+            program.add("STOREOFF " + i);
+        }
+        program.addAll(List.of(
+                "PUSHOFF " + (locals + 1),
+                "ISNIL",
+                "JUMPC done",
+                "PUSHOFF -1",
+                "PUSH 1",
+                "SUB",
+                "LINK",
+                "JSR rec",
+                "POPFBR",
+                "POP",
+                "done:",
+                "ADDSP -" + locals,
+                "JUMPIND"));
+        return program.toArray(new String[0]);
+    }
+
+    private static String[] lines(String... lines) {
+        return lines;
+    }
+}
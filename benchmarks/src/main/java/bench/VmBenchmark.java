@@ -0,0 +1,85 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import maquina.Arithmetic_Logic;
+import maquina.Assembler;
+import maquina.Control;
+import maquina.Fuser;
+import maquina.IO;
+import maquina.JitCompiler;
+import maquina.RegisterManip;
+import maquina.SamInterpreter;
+import maquina.SamProgram;
+import maquina.StackManip;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//SamInterpreter.execute sobre programas típicos, em cada modo de execução
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VmBenchmark {
+    private static final int MALLOC_COUNT = 100_000;
+    private static final int MALLOC_BLOCK = 4;
+
+    @Param({"arithmetic", "fib", "malloc", "frames"})
+    public String workload;
+
+    @Param({"interp", "fused", "jit", "tos", "closures"})
+    public String engine;
+
+    private SamProgram program;
+    private int heapSize;
+
+    private final IO io = new IO();
+    private final Arithmetic_Logic al = new Arithmetic_Logic();
+    private final RegisterManip rm = new RegisterManip();
+    private final StackManip sm = new StackManip();
+    private final Control con = new Control();
+
+    @Setup
+    public void setup() {
+        heapSize = 1024;
+        String[] source = switch (workload) {
+            case "arithmetic" -> SamWorkloads.arithmeticLoop(1_000_000);
+            case "fib" -> SamWorkloads.recursiveFib(22);
+            case "malloc" -> {
+                heapSize = MALLOC_COUNT * (MALLOC_BLOCK + 1);
+                yield SamWorkloads.mallocLoop(MALLOC_COUNT, MALLOC_BLOCK);
+            }
+            case "frames" -> SamWorkloads.deepFrames(20, 500, 64);
+            default -> throw new IllegalArgumentException(workload);
+        };
+        program = new Assembler().assemble(source);
+        if (engine.equals("fused")) {
+            program = new Fuser().fuse(program);
+        }
+    }
+
+    @Benchmark
+    public SamInterpreter execute() {
+        SamInterpreter interpreter = new SamInterpreter(program, heapSize);
+        if (engine.equals("jit")) {
+            interpreter.enableJit(JitCompiler.DEFAULT_THRESHOLD);
+        } else if (engine.equals("tos")) {
+            interpreter.enableTopOfStackCache();
+        } else if (engine.equals("closures")) {
+            interpreter.enableClosureCompilation();
+        }
+        interpreter.execute(io, al, rm, sm, con);
+        return interpreter;
+    }
+}
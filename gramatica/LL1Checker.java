@@ -140,7 +140,7 @@ public class LL1Checker {
     }
 
     // Tokenizer simples
-    private static List<String> tokenize(String input) {
+    public static List<String> tokenize(String input) {
         List<String> tokens = new ArrayList<>();
         input = input.trim();
 
@@ -216,9 +216,8 @@ public class LL1Checker {
         return tokens;
     }
 
-    // Exemplo de uso
-    public static void main(String[] args) {
-        // Exemplo de gramática
+    // Gramática da linguagem (usada pelo main e pelos benchmarks)
+    public static Map<String, List<List<String>>> buildGrammar() {
         Map<String, List<List<String>>> grammar = new HashMap<>();
         // S → statement*
         grammar.put("S", Arrays.asList(
@@ -408,6 +407,12 @@ public class LL1Checker {
                 Arrays.asList(">="),
                 Arrays.asList("e"),
                 Arrays.asList("ou")));
+        return grammar;
+    }
+
+    // Exemplo de uso
+    public static void main(String[] args) {
+        Map<String, List<List<String>>> grammar = buildGrammar();
         LL1Checker checker = new LL1Checker(grammar, "S");
         checker.printFirstSets();
         checker.printFollowSets();